@@ -2,8 +2,14 @@ package com.bodyweight.fitness
 
 import android.app.Application
 import android.content.Context
+import android.os.SystemClock
 
-import com.bodyweight.fitness.repository.SchemaMigration
+import com.bodyweight.fitness.extension.debug
+import com.bodyweight.fitness.repository.OrphanSweeper
+import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.service.AudioCues
+import com.bodyweight.fitness.stream.RoutinePreloader
+import com.bodyweight.fitness.stream.TimerEngine
 
 import com.crashlytics.android.Crashlytics
 import com.crashlytics.android.answers.Answers
@@ -17,6 +23,12 @@ class App : Application() {
     companion object {
         @JvmStatic
         var context: Context? = null
+
+        /**
+         * Taken when the application class is loaded, as close to process start as the app can measure.
+         */
+        @JvmStatic
+        val startElapsedRealtime = SystemClock.elapsedRealtime()
     }
 
     override fun onCreate() {
@@ -33,8 +45,29 @@ class App : Application() {
 
         context = applicationContext
 
-        SchemaMigration().apply {
-            migrateSchemaIfNeeded()
+        RoutinePreloader.start()
+        RoutinePreloader.whenReady {
+            OrphanSweeper.run().subscribe({
+                debug("Deleted ${it.deletedObjects} orphaned objects, reclaimed ${it.reclaimedBytes} bytes")
+            }, {
+                debug("Unable to sweep orphaned objects: ${it.message}")
+            })
+        }
+    }
+
+    /**
+     * The main thread's idle Realm instance is closed once the ui is hidden, so a pending compaction can run.
+     * The decoded cues are dropped once the app is in the background with no countdown running.
+     */
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            Repository.releaseIdle()
+        }
+
+        if (level >= TRIM_MEMORY_BACKGROUND && !TimerEngine.exerciseTimer.state.isPlaying && !TimerEngine.restTimer.state.isPlaying) {
+            AudioCues.release()
         }
     }
 }
@@ -25,4 +25,7 @@ object Constants {
     val preferencesShowRestTimerAfterWarmup = "PREFERENCE_SHOW_REST_TIMER_WARMUP_EXERCISES"
     val preferencesShowRestTimerAfterBodylineDrills = "PREFERENCE_SHOW_REST_TIMER_BODYLINE_DRILLS"
     val preferencesShowRestTimerAfterFlexibilityExercises = "PREFERENCE_SHOW_REST_TIMER_FLEXIBILITY_ROUTINES"
+    val preferencesCompactionPending = "PREFERENCE_COMPACTION_PENDING"
+    val preferencesSweptSchemaVersion = "PREFERENCE_SWEPT_SCHEMA_VERSION"
+    val preferencesSchemaCheckedVersion = "PREFERENCE_SCHEMA_CHECKED_VERSION_"
 }
\ No newline at end of file
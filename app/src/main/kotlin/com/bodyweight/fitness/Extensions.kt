@@ -8,12 +8,13 @@ import android.view.View
 import android.view.ViewGroup
 import android.widget.LinearLayout
 
-import com.bodyweight.fitness.model.RepositoryRoutine
-import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.LoggedDaysIndex
 import com.bodyweight.fitness.utils.Preferences
 
-import io.realm.RealmResults
 import org.joda.time.DateTime
+import org.joda.time.DateTimeConstants
+import org.joda.time.DateTimeZone
+import org.joda.time.LocalDate
 
 fun primary(): Int {
     return Color.parseColor("#009688")
@@ -85,38 +86,19 @@ fun DateTime.isToday(): Boolean {
             now.dayOfMonth == this.dayOfMonth
 }
 
-fun DateTime.isRoutineLogged(): Boolean {
-    val start = this.withTimeAtStartOfDay()
-            .toDate()
-
-    val end = this.withTimeAtStartOfDay()
-            .plusDays(1)
-            .minusSeconds(1)
-            .toDate()
-
-    val realm = Repository.realm
-    val routine = realm.where(RepositoryRoutine::class.java)
-            .between("startTime", start, end)
-            .findFirst()
-
-    return routine != null
+/**
+ * Number of days between 1970-01-01 and the local date of this DateTime.
+ */
+fun DateTime.toDayKey(): Int {
+    return (toLocalDate().toDateTimeAtStartOfDay(DateTimeZone.UTC).millis / DateTimeConstants.MILLIS_PER_DAY).toInt()
 }
 
-fun DateTime.isRoutineLoggedWithResults(): RealmResults<RepositoryRoutine> {
-    val start = this.withTimeAtStartOfDay()
-            .toDate()
-
-    val end = this.withTimeAtStartOfDay()
-            .plusDays(1)
-            .minusSeconds(1)
-            .toDate()
-
-    val realm = Repository.realm
-    val results: RealmResults<RepositoryRoutine> = realm.where(RepositoryRoutine::class.java)
-            .between("startTime", start, end)
-            .findAll()
+fun Int.dayKeyToDateTime(): DateTime {
+    return LocalDate(this.toLong() * DateTimeConstants.MILLIS_PER_DAY, DateTimeZone.UTC).toDateTimeAtStartOfDay()
+}
 
-    return results
+fun DateTime.isRoutineLogged(): Boolean {
+    return LoggedDaysIndex.isLogged(this.toDayKey())
 }
 
 fun Double.formatWeight(): String {
@@ -9,23 +9,24 @@ import android.view.ViewGroup
 import android.widget.Toast
 
 import com.bodyweight.fitness.*
+import com.bodyweight.fitness.model.RepositoryChange
+import com.bodyweight.fitness.model.RepositoryChangeType
 import com.bodyweight.fitness.model.RepositoryRoutine
 import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.RoutineSnapshot
 import com.bodyweight.fitness.stream.Stream
 import com.bodyweight.fitness.ui.ProgressActivity
 
-import io.realm.RealmResults
-
 import kotlinx.android.synthetic.main.view_calendar_card.view.*
 
 import java.io.File
 import java.io.FileOutputStream
 
 class CalendarListAdapter : RecyclerView.Adapter<CalendarRoutinePresenter>() {
-    private var repositoryRoutineList: RealmResults<RepositoryRoutine>? = null
+    private var routineSnapshots: List<RoutineSnapshot> = emptyList()
 
-    fun setItems(results: RealmResults<RepositoryRoutine>) {
-        repositoryRoutineList = results
+    fun setItems(snapshots: List<RoutineSnapshot>) {
+        routineSnapshots = snapshots
 
         notifyDataSetChanged()
     }
@@ -37,38 +38,29 @@ class CalendarListAdapter : RecyclerView.Adapter<CalendarRoutinePresenter>() {
     }
 
     override fun onBindViewHolder(presenter: CalendarRoutinePresenter, position: Int) {
-        repositoryRoutineList?.let {
-            presenter.calendarListAdapter = this
-            presenter.onBindView(it[position])
-        }
+        presenter.calendarListAdapter = this
+        presenter.onBindView(routineSnapshots[position])
     }
 
-    override fun getItemCount(): Int = repositoryRoutineList?.size ?: 0
+    override fun getItemCount(): Int = routineSnapshots.size
     override fun getItemViewType(position: Int): Int = 0
 }
 
 class CalendarRoutinePresenter(itemView: View) : RecyclerView.ViewHolder(itemView) {
     var calendarListAdapter: CalendarListAdapter? = null
 
-    fun onBindView(repositoryRoutine: RepositoryRoutine) {
-        itemView.view_calendar_routine_title.text = repositoryRoutine.title
-        itemView.view_calendar_routine_subtitle.text = repositoryRoutine.subtitle
+    fun onBindView(routineSnapshot: RoutineSnapshot) {
+        itemView.view_calendar_routine_title.text = routineSnapshot.title
+        itemView.view_calendar_routine_subtitle.text = routineSnapshot.subtitle
 
-        val completionRate = RepositoryRoutine.getCompletionRate(repositoryRoutine)
+        val completionRate = routineSnapshot.completionRate
 
         itemView.completion_rate_label.text = completionRate.label
         itemView.completion_rate_value.setLayoutWeight(calculateLayoutWeight(completionRate.percentage))
 
         itemView.view_calendar_card_view_button.setOnClickListener {
             val intent = Intent(it.context, ProgressActivity::class.java)
-            intent.putExtra(Constants.primaryKeyRoutineId, repositoryRoutine.id)
-
-            it.context.startActivity(intent)
-        }
-
-        itemView.view_calendar_card_export_button.setOnClickListener {
-            val intent = Intent(it.context, ProgressActivity::class.java)
-            intent.putExtra(Constants.primaryKeyRoutineId, repositoryRoutine.id)
+            intent.putExtra(Constants.primaryKeyRoutineId, routineSnapshot.id)
 
             it.context.startActivity(intent)
         }
@@ -77,6 +69,8 @@ class CalendarRoutinePresenter(itemView: View) : RecyclerView.ViewHolder(itemVie
             val context = it.context
 
             try {
+                val repositoryRoutine = Repository.getRepositoryRoutineForPrimaryKeyRoutineId(routineSnapshot.id)
+
                 val path = File(context.filesDir, "csv");
                 val file = File(path, "LoggedWorkout.csv").apply {
                     if (parentFile.mkdirs()) {
@@ -110,13 +104,21 @@ class CalendarRoutinePresenter(itemView: View) : RecyclerView.ViewHolder(itemVie
             AlertDialog.Builder(it.context)
                     .setTitle("Remove Logged Workout?")
                     .setPositiveButton("Ok") { dialog, which ->
-                        val realm = Repository.realm
+                        var change: RepositoryChange? = null
 
-                        realm.executeTransaction {
-                            repositoryRoutine.deleteFromRealm()
+                        Repository.realm.executeTransaction {
+                            it.where(RepositoryRoutine::class.java)
+                                    .equalTo("id", routineSnapshot.id)
+                                    .findFirst()?.let {
+                                change = RepositoryRoutine.change(it, RepositoryChangeType.RoutineDeleted)
+
+                                RepositoryRoutine.delete(Repository.realm, it)
+                            }
                         }
 
-                        Stream.setRepository()
+                        change?.let {
+                            Stream.setRepository(it)
+                        }
                     }
                     .setNegativeButton("Cancel") { dialog, which ->  }
                     .show()
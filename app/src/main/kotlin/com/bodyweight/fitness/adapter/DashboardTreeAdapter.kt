@@ -56,7 +56,7 @@ class DashboardTreeAdapter(private val routine: Routine, currentExercise: Exerci
 
                     dashboardTree.put(index, Tuple(section))
 
-                    if (section.exercises.contains(currentExercise)) {
+                    if (currentExercise.section === section) {
                         scrollPosition = index
                     }
 
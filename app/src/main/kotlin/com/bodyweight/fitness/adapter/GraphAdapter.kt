@@ -125,8 +125,8 @@ class WorkoutLengthAdapter : SparkAdapter() {
     }
 
     override fun getY(index: Int): Float {
-        data[index].repositoryRoutine?.let {
-            return RepositoryRoutine.getWorkoutLengthInMinutes(it).toFloat()
+        data[index].summary?.let {
+            return it.lengthInMinutes.toFloat()
         }
 
         return 0f
@@ -169,8 +169,8 @@ class CategoryCompletionRateAdapter : SparkAdapter() {
     }
 
     override fun getY(index: Int): Float {
-        data[index].repositoryCategory?.let {
-            return RepositoryCategory.getCompletionRate(it).percentage.toFloat()
+        data[index].summary?.let {
+            return it.completionRate.toFloat()
         }
 
         return 0f
@@ -213,8 +213,8 @@ class CompletionRateAdapter : SparkAdapter() {
     }
 
     override fun getY(index: Int): Float {
-        data[index].repositoryRoutine?.let {
-            return RepositoryRoutine.getCompletionRate(it).percentage.toFloat()
+        data[index].summary?.let {
+            return it.completionRate.toFloat()
         }
 
         return 0f
@@ -60,6 +60,18 @@ class ProgressListAdapter(private val repositoryCategory: RepositoryCategory) :
         }
     }
 
+    /**
+     * Rebinds the card of the exercise and the header, returns false when the exercise is not in this category.
+     */
+    fun notifyExerciseChanged(exerciseId: String): Boolean {
+        val index = indexExerciseHashMap.entries.firstOrNull { it.value.exerciseId == exerciseId }?.key ?: return false
+
+        notifyItemChanged(0)
+        notifyItemChanged(index)
+
+        return true
+    }
+
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ProgressPresenter {
         when (viewType) {
             ProgressAdapterViewType.Header.ordinal -> {
@@ -159,8 +171,8 @@ class ProgressHeaderPresenter(itemView: View) : ProgressPresenter(itemView) {
             dateTimeCompletionRate?.let {
                 itemView.graph_category_completion_rate_title.text = it.dateTime.toString("dd MMMM, YYYY", Locale.ENGLISH)
 
-                if (it.repositoryCategory != null) {
-                    val completionRate = RepositoryCategory.getCompletionRate(it.repositoryCategory)
+                if (it.summary != null) {
+                    val completionRate = RepositoryCategorySummary.getCompletionRate(it.summary)
 
                     itemView.graph_category_completion_rate_description.text = "${completionRate.label}"
                 } else {
@@ -206,35 +218,24 @@ class ProgressHeaderPresenter(itemView: View) : ProgressPresenter(itemView) {
 
     fun updateCompletionRateGraph(adapter: CategoryCompletionRateAdapter, minusDays: Int = 7) {
         val start = DateTime.now().withTimeAtStartOfDay().minusDays(minusDays)
-        val end = DateTime.now()
+        val startDayKey = start.toDayKey()
 
-        Repository.realm.where(RepositoryRoutine::class.java)
-                .between("startTime", start.toDate(), end.toDate())
+        Repository.realm.where(RepositoryDailySummary::class.java)
+                .between("dayKey", startDayKey + 1, startDayKey + minusDays)
                 .findAllAsync()
                 .sort("startTime", Sort.DESCENDING)
                 .asObservable()
                 .filter { it.isLoaded }
                 .map {
+                    val summaries = RepositoryDailySummary.byDayKey(it)
                     val dates = ArrayList<CategoryDateTimeCompletionRate>()
 
                     for (index in 1..minusDays) {
-                        val date = start.plusDays(index)
-
-                        val repositoryCategory: RepositoryCategory? = it.filter {
-                            val startTime = DateTime(it.startTime)
-
-                            date.dayOfMonth == startTime.dayOfMonth
-                                    && date.monthOfYear == startTime.monthOfYear
-                                    && date.year == startTime.year
-                        }.firstOrNull()?.categories?.filter {
+                        val categorySummary: RepositoryCategorySummary? = summaries[startDayKey + index]?.categories?.filter {
                             it.categoryId == repositoryCategory?.categoryId
                         }?.firstOrNull()
 
-                        if (repositoryCategory != null) {
-                            dates.add(CategoryDateTimeCompletionRate(date, repositoryCategory))
-                        } else {
-                            dates.add(CategoryDateTimeCompletionRate(date, null))
-                        }
+                        dates.add(CategoryDateTimeCompletionRate(start.plusDays(index), categorySummary))
                     }
 
                     dates
@@ -70,10 +70,8 @@ class ProgressPagerAdapter(private val repositoryRoutine: RepositoryRoutine) : P
         viewWeakHashMap[tabPosition]?.smoothScrollToPosition(0)
     }
 
-    fun onRepositoryUpdated() {
-        for (adapter in adapterList) {
-            adapter.notifyDataSetChanged()
-        }
+    fun onExerciseUpdated(exerciseId: String) {
+        adapterList.any { it.notifyExerciseChanged(exerciseId) }
     }
 
     private fun createRecyclerView(view: View, position: Int) {
@@ -12,10 +12,16 @@ import android.widget.TextView
 import com.bodyweight.fitness.*
 import com.bodyweight.fitness.model.*
 import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.RepositoryReader
+import com.bodyweight.fitness.repository.SetEdit
+import com.bodyweight.fitness.repository.SetEditBuffer
+import com.bodyweight.fitness.stream.RoutineStream
 import com.bodyweight.fitness.stream.Stream
 import com.bodyweight.fitness.utils.Preferences
 import com.bodyweight.fitness.view.listener.RepeatListener
 
+import com.trello.rxlifecycle.kotlin.bindToLifecycle
+
 import kotlinx.android.synthetic.main.view_dialog_log_workout.view.*
 
 import java.util.*
@@ -137,23 +143,42 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     private val logWorkoutPresenter: LogWorkoutPresenter = LogWorkoutPresenter()
-    private val repositoryRoutine: RepositoryRoutine by lazy {
-        val primaryKeyRoutineId = arguments.getString(Constants.primaryKeyRoutineId)
-
-        if (primaryKeyRoutineId == null) {
-            Repository.repositoryRoutineForToday
-        } else {
-            Repository.getRepositoryRoutineForPrimaryKeyRoutineId(primaryKeyRoutineId)
-        }
+    private val exerciseId: String by lazy {
+        arguments.getString(Constants.exerciseId)
     }
 
-    private val repositoryExercise: RepositoryExercise by lazy {
-        val exerciseId = arguments.getString(Constants.exerciseId)
+    /**
+     * Null until today's workout is written, which happens on the first edit or added set rather than on open.
+     */
+    private var repositoryRoutine: RepositoryRoutine? = null
 
-        repositoryRoutine.exercises.filter { it.exerciseId.equals(exerciseId) }.first()
-    }
+    /**
+     * Built from the routine catalogue while today's workout is not written yet.
+     */
+    private var repositoryExercise: RepositoryExercise by Delegates.notNull()
+
+    /**
+     * Shown while the exercise has no sets, it is only stored once the user changes it or adds another set.
+     */
+    private var firstSet: RepositorySet by Delegates.notNull()
+
+    private val sets: List<RepositorySet>
+        get() = if (repositoryExercise.sets.isEmpty()) listOf(firstSet) else repositoryExercise.sets
+
+    private var setEdit: SetEdit by Delegates.notNull()
+
+    /**
+     * What happened to the sets while the dialog was open, reported once it is dismissed.
+     */
+    private val changeTypes = LinkedHashSet<RepositoryChangeType>()
+
+    private val editBuffer = SetEditBuffer {
+        updateRepositoryRoutine {
+            it.applyTo(Repository.realm)
+        }
 
-    private var repositorySet: RepositorySet by Delegates.notNull()
+        changeTypes.add(RepositoryChangeType.SetEdited)
+    }
 
     private var layout: View by Delegates.notNull()
     private var rowLayout: LinearLayout by Delegates.notNull()
@@ -162,6 +187,18 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     override fun setupDialog(dialog: Dialog?, style: Int) {
         super.setupDialog(dialog, style)
 
+        val primaryKeyRoutineId = arguments.getString(Constants.primaryKeyRoutineId)
+
+        repositoryRoutine = if (primaryKeyRoutineId == null) {
+            Repository.findRepositoryRoutineForToday()
+        } else {
+            Repository.getRepositoryRoutineForPrimaryKeyRoutineId(primaryKeyRoutineId)
+        }
+
+        repositoryExercise = repositoryRoutine?.let { RepositoryRoutine.findExercise(it, exerciseId) } ?: catalogueExercise()
+
+        firstSet = RepositorySet(isTimed = repositoryExercise.defaultSet != "weighted")
+
         layout = View.inflate(context, R.layout.view_dialog_log_workout, null)
         dialog?.setContentView(layout)
 
@@ -192,29 +229,21 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
             decreaseRight()
         }));
 
-        val realm = Repository.realm
-        val results = realm.where(RepositoryRoutine::class.java)
-                .lessThan("startTime", repositoryRoutine.startTime)
-                .notEqualTo("id", repositoryRoutine.id)
-                .findAll()
-
-        if (results.isNotEmpty()) {
-            layout.previous_workout_label.setVisible()
-            layout.previous_workout_value.setVisible()
-            layout.this_workout_label.setVisible()
-
-            results.lastOrNull()?.let {
-                it.exercises.filter {
-                    it.exerciseId.equals(repositoryExercise.exerciseId)
-                }.firstOrNull()?.let {
-                    layout.previous_workout_value.text = logWorkoutPresenter.getPreviousWorkoutDescription(it)
+        layout.previous_workout_label.setGone()
+        layout.previous_workout_value.setGone()
+        layout.this_workout_label.setGone()
+
+        RepositoryReader.previousWorkout(repositoryRoutine?.id ?: "", repositoryRoutine?.startTime ?: Date(), exerciseId)
+                .bindToLifecycle(layout)
+                .subscribe {
+                    layout.previous_workout_label.setVisible()
+                    layout.previous_workout_value.setVisible()
+                    layout.this_workout_label.setVisible()
+
+                    it.description?.let {
+                        layout.previous_workout_value.text = it
+                    }
                 }
-            }
-        } else {
-            layout.previous_workout_label.setGone()
-            layout.previous_workout_value.setGone()
-            layout.this_workout_label.setGone()
-        }
 
         layout.actionView.setGone()
         layout.saveButton.setOnClickListener { dismiss() }
@@ -223,17 +252,45 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
         buildSets()
     }
 
+    override fun onPause() {
+        super.onPause()
+
+        editBuffer.flush()
+    }
+
     override fun onDismiss(dialog: DialogInterface?) {
         super.onDismiss(dialog)
 
+        editBuffer.flush()
+
+        val repositoryRoutine = repositoryRoutine ?: return
+
         val mode = repositoryExercise.section!!.mode
         if (mode.equals(SectionMode.Levels.asString) || mode.equals(SectionMode.Pick.asString)) {
             Repository.realm.executeTransaction {
                 repositoryExercise.visible = RepositoryExercise.isCompleted(repositoryExercise)
+
+                RepositoryDailySummary.update(it, repositoryRoutine)
             }
         }
 
-        Stream.setRepository()
+        for (changeType in changeTypes) {
+            Stream.setRepository(RepositoryRoutine.change(repositoryRoutine, changeType, exerciseId))
+        }
+
+        changeTypes.clear()
+    }
+
+    private fun updateRepositoryRoutine(transaction: () -> Unit) {
+        val repositoryRoutine = repositoryRoutine!!
+
+        Repository.realm.executeTransaction {
+            transaction()
+
+            RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = true)
+            RepositoryDailySummary.update(it, repositoryRoutine)
+            RepositorySetHistory.update(it, repositoryExercise)
+        }
     }
 
     fun updateToolbarMenu() {
@@ -302,11 +359,13 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
 
     fun createSet(isTimed: Boolean = false) {
         if (shouldAddSet()) {
+            storeFirstSet()
+
             val lastSet = repositoryExercise.sets.last()
             var set: RepositorySet? = null
 
-            Repository.realm.executeTransaction {
-                set = Repository.realm.createObject(RepositorySet::class.java, "Set-" + UUID.randomUUID().toString())
+            updateRepositoryRoutine {
+                set = RepositorySequence.createObject(Repository.realm, RepositorySet::class.java)
 
                 set?.let {
                     it.isTimed = isTimed
@@ -314,9 +373,13 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
                     it.weight = lastSet.weight
                     it.reps = lastSet.reps
                     it.exercise = repositoryExercise
+
+                    repositoryExercise.sets.add(it)
                 }
             }
 
+            changeTypes.add(RepositoryChangeType.SetAdded)
+
             set?.let {
                 addSet(it, isTimed)
             }
@@ -325,8 +388,67 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
         }
     }
 
+    /**
+     * The exercise as the routine describes it, with no sets and nothing stored.
+     */
+    private fun catalogueExercise(): RepositoryExercise {
+        val exercise = RoutineStream.routine.getExercise(exerciseId)!!
+
+        return RepositoryExercise(
+                exerciseId = exercise.exerciseId,
+                title = exercise.title,
+                description = exercise.description,
+                defaultSet = exercise.defaultSet)
+    }
+
+    /**
+     * Writes today's workout when it does not exist yet and the shown first set when the exercise has no
+     * stored sets, then returns the first stored set.
+     */
+    private fun storeFirstSet(): RepositorySet {
+        if (repositoryRoutine == null) {
+            val repositoryRoutine = Repository.getOrCreateRepositoryRoutineForToday()
+
+            this.repositoryRoutine = repositoryRoutine
+            repositoryExercise = RepositoryRoutine.findExercise(repositoryRoutine, exerciseId)!!
+        }
+
+        if (repositoryExercise.sets.isEmpty()) {
+            updateRepositoryRoutine {
+                val set = RepositorySequence.createObject(Repository.realm, RepositorySet::class.java)
+
+                set.isTimed = firstSet.isTimed
+                set.seconds = firstSet.seconds
+                set.weight = firstSet.weight
+                set.reps = firstSet.reps
+                set.exercise = repositoryExercise
+
+                repositoryExercise.sets.add(set)
+            }
+
+            changeTypes.add(RepositoryChangeType.SetAdded)
+        }
+
+        return repositoryExercise.sets.first()
+    }
+
+    /**
+     * Edits of the shown first set store it with the edited values, later edits go through the buffer.
+     */
+    private fun putEdit() {
+        if (repositoryExercise.sets.isEmpty()) {
+            firstSet.reps = setEdit.reps
+            firstSet.weight = setEdit.weight
+            firstSet.seconds = setEdit.seconds
+
+            setEdit = SetEdit(storeFirstSet())
+        } else {
+            editBuffer.put(setEdit)
+        }
+    }
+
     fun buildSets() {
-        for (set in repositoryExercise.sets) {
+        for (set in sets) {
             if (shouldAddSet()) {
                 addSet(set, set.isTimed)
             }
@@ -340,6 +462,8 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
 
         layout.saveButton.text = "Back"
         layout.saveButton.setOnClickListener {
+            editBuffer.flush()
+
             updateSets()
 
             layout.toolbar.subtitle = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -362,7 +486,7 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
 
     fun updateSets() {
         for ((index, view) in viewSets.toArray().withIndex()) {
-            val set = repositoryExercise.sets[index]
+            val set = sets[index]
 
             updateSet(set, view as View, set.isTimed)
         }
@@ -397,9 +521,9 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
         updateSet(set, view, isTimed)
 
         view.setOnClickListener {
-            val index = repositoryExercise.sets.indexOf(set)
+            val index = viewSets.indexOf(view)
 
-            updateActionView(set, index + 1, isTimed)
+            updateActionView(sets[index], index + 1, isTimed)
 
             layout.setView.visibility = View.GONE
             layout.actionView.visibility = View.VISIBLE
@@ -409,22 +533,16 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
 
         rowLayout.addView(view)
 
-        Repository.realm.executeTransaction {
-            if (!repositoryExercise.sets.contains(set)) {
-                repositoryExercise.sets.add(set)
-            }
-        }
-
         viewSets.add(view)
-
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
     }
 
     fun removeLastSet() {
-        Repository.realm.executeTransaction {
-            repositoryExercise.sets.remove(repositoryExercise.sets.last())
+        updateRepositoryRoutine {
+            repositoryExercise.sets.last().deleteFromRealm()
         }
 
+        changeTypes.add(RepositoryChangeType.SetRemoved)
+
         viewSets.remove(viewSets.last())
         rowLayout.removeViewAt(rowLayout.childCount - 1)
 
@@ -435,25 +553,23 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     fun updateActionView(repositorySet: RepositorySet, index: Int, isTimed: Boolean = false) {
-        if (isTimed) {
-            this.repositorySet = repositorySet
+        setEdit = editBuffer.edit(repositorySet)
 
+        if (isTimed) {
             layout.setValue.text = index.toString()
 
-            layout.repsValue.text = repositorySet.seconds.formatMinutes(false)
+            layout.repsValue.text = setEdit.seconds.formatMinutes(false)
             layout.repsDescription.text = "Minutes"
 
-            layout.weightValue.text = repositorySet.seconds.formatSeconds(false)
+            layout.weightValue.text = setEdit.seconds.formatSeconds(false)
             layout.weightDescription.text = "Seconds"
         } else {
-            this.repositorySet = repositorySet
-
             layout.setValue.text = index.toString()
 
-            layout.repsValue.text = repositorySet.reps.toString()
+            layout.repsValue.text = setEdit.reps.toString()
             layout.repsDescription.text = "Reps"
 
-            layout.weightValue.text = repositorySet.weight.toString()
+            layout.weightValue.text = setEdit.weight.toString()
             layout.weightDescription.text = "Weight (${Preferences.weightMeasurementUnit.asString})"
         }
     }
@@ -519,7 +635,7 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     fun increaseLeft() {
-        if (repositorySet.isTimed) {
+        if (setEdit.isTimed) {
             increaseMinutes()
         } else {
             increaseReps()
@@ -527,7 +643,7 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     fun decreaseLeft() {
-        if (repositorySet.isTimed) {
+        if (setEdit.isTimed) {
             decreaseMinutes()
         } else {
             decreaseReps()
@@ -535,7 +651,7 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     fun increaseRight() {
-        if (repositorySet.isTimed) {
+        if (setEdit.isTimed) {
             increaseSeconds()
         } else {
             increaseWeight()
@@ -543,7 +659,7 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     fun decreaseRight() {
-        if (repositorySet.isTimed) {
+        if (setEdit.isTimed) {
             decreaseSeconds()
         } else {
             decreaseWeight()
@@ -551,126 +667,110 @@ class LogWorkoutDialog : BottomSheetDialogFragment() {
     }
 
     fun increaseMinutes() {
-        if (repositorySet.seconds / 60 >= 5) {
+        if (setEdit.seconds / 60 >= 5) {
             return
         }
 
-        Repository.realm.executeTransaction {
-            repositorySet.seconds += 60
-        }
+        setEdit.seconds += 60
 
-        layout.repsValue.text = repositorySet.seconds.formatMinutes(false)
-        layout.weightValue.text = repositorySet.seconds.formatSeconds(false)
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.repsValue.text = setEdit.seconds.formatMinutes(false)
+        layout.weightValue.text = setEdit.seconds.formatSeconds(false)
     }
 
     fun decreaseMinutes() {
-        if (repositorySet.seconds < 60) {
+        if (setEdit.seconds < 60) {
             return
         }
 
-        Repository.realm.executeTransaction {
-            repositorySet.seconds -= 60
-        }
+        setEdit.seconds -= 60
 
-        layout.repsValue.text = repositorySet.seconds.formatMinutes(false)
-        layout.weightValue.text = repositorySet.seconds.formatSeconds(false)
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.repsValue.text = setEdit.seconds.formatMinutes(false)
+        layout.weightValue.text = setEdit.seconds.formatSeconds(false)
     }
 
     fun increaseSeconds() {
-        Repository.realm.executeTransaction {
-            if (repositorySet.seconds % 60 == 59) {
-                repositorySet.seconds -= 59
-            } else {
-                repositorySet.seconds += 1
-            }
+        if (setEdit.seconds % 60 == 59) {
+            setEdit.seconds -= 59
+        } else {
+            setEdit.seconds += 1
         }
 
-        layout.repsValue.text = repositorySet.seconds.formatMinutes(false)
-        layout.weightValue.text = repositorySet.seconds.formatSeconds(false)
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.repsValue.text = setEdit.seconds.formatMinutes(false)
+        layout.weightValue.text = setEdit.seconds.formatSeconds(false)
     }
 
     fun decreaseSeconds() {
-        Repository.realm.executeTransaction {
-            if (repositorySet.seconds % 60 == 0) {
-                repositorySet.seconds += 59
-            } else {
-                repositorySet.seconds -= 1
-            }
+        if (setEdit.seconds % 60 == 0) {
+            setEdit.seconds += 59
+        } else {
+            setEdit.seconds -= 1
         }
 
-        layout.repsValue.text = repositorySet.seconds.formatMinutes(false)
-        layout.weightValue.text = repositorySet.seconds.formatSeconds(false)
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.repsValue.text = setEdit.seconds.formatMinutes(false)
+        layout.weightValue.text = setEdit.seconds.formatSeconds(false)
     }
 
     fun increaseReps() {
-        if (repositorySet.reps >= 50) {
+        if (setEdit.reps >= 50) {
             return
         }
 
-        Repository.realm.executeTransaction {
-            repositorySet.reps += 1
-        }
+        setEdit.reps += 1
 
-        layout.repsValue.text = repositorySet.reps.toString()
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.repsValue.text = setEdit.reps.toString()
     }
 
     fun decreaseReps() {
-        if (repositorySet.reps == 0) {
+        if (setEdit.reps == 0) {
             return
         }
 
-        Repository.realm.executeTransaction {
-            repositorySet.reps -= 1
-        }
+        setEdit.reps -= 1
 
-        layout.repsValue.text = repositorySet.reps.toString()
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.repsValue.text = setEdit.reps.toString()
     }
 
     fun increaseWeight() {
-        if (repositorySet.weight >= 250.0) {
+        if (setEdit.weight >= 250.0) {
             return
         }
 
-        Repository.realm.executeTransaction {
-            if (Preferences.weightMeasurementUnit.equals(WeightMeasurementUnit.Kg)) {
-                repositorySet.weight += 0.5
-            } else {
-                repositorySet.weight += 1.0
-            }
+        if (Preferences.weightMeasurementUnit.equals(WeightMeasurementUnit.Kg)) {
+            setEdit.weight += 0.5
+        } else {
+            setEdit.weight += 1.0
         }
 
-        layout.weightValue.text = repositorySet.weight.toString()
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.weightValue.text = setEdit.weight.toString()
     }
 
     fun decreaseWeight() {
-        if (repositorySet.weight <= 0) {
+        if (setEdit.weight <= 0) {
             return
         }
 
-        Repository.realm.executeTransaction {
-            if (Preferences.weightMeasurementUnit.equals(WeightMeasurementUnit.Kg)) {
-                repositorySet.weight -= 0.5
-            } else {
-                repositorySet.weight -= 1.0
-            }
+        if (Preferences.weightMeasurementUnit.equals(WeightMeasurementUnit.Kg)) {
+            setEdit.weight -= 0.5
+        } else {
+            setEdit.weight -= 1.0
         }
 
-        layout.weightValue.text = repositorySet.weight.toString()
+        putEdit()
 
-        RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = false)
+        layout.weightValue.text = setEdit.weight.toString()
     }
 }
\ No newline at end of file
@@ -60,17 +60,17 @@ class ProgressDialog : BottomSheetDialogFragment() {
 
             RoutineStream.setLevel(chosenExercise, chosenLevel)
 
-            if (Repository.repositoryRoutineForTodayExists()) {
-                val repositoryRoutine = Repository.repositoryRoutineForToday
-
+            Repository.findRepositoryRoutineForToday()?.let { repositoryRoutine ->
                 Repository.realm.executeTransaction {
-                    repositoryRoutine.exercises.find { it.exerciseId == exercise.exerciseId }?.let {
+                    RepositoryRoutine.findExercise(repositoryRoutine, exercise.exerciseId)?.let {
                         it.visible = false
                     }
 
-                    repositoryRoutine.exercises.find { it.exerciseId == chosenExercise.exerciseId }?.let {
+                    RepositoryRoutine.findExercise(repositoryRoutine, chosenExercise.exerciseId)?.let {
                         it.visible = true
                     }
+
+                    RepositoryDailySummary.update(it, repositoryRoutine)
                 }
             }
 
@@ -27,11 +27,11 @@ data class CalendarDay(var page: Int = 60, var day: Int = 3) {
     }
 }
 
-data class DateTimeRepositorySet(val dateTime: DateTime, val repositorySet: RepositorySet? = null)
+data class DateTimeRepositorySet(val dateTime: DateTime, val repositorySet: RepositorySetHistory? = null)
 
-data class DateTimeWorkoutLength(val dateTime: DateTime, val repositoryRoutine: RepositoryRoutine? = null)
-data class DateTimeCompletionRate(val dateTime: DateTime, val repositoryRoutine: RepositoryRoutine? = null)
-data class CategoryDateTimeCompletionRate(val dateTime: DateTime, val repositoryCategory: RepositoryCategory? = null)
+data class DateTimeWorkoutLength(val dateTime: DateTime, val summary: RepositoryDailySummary? = null)
+data class DateTimeCompletionRate(val dateTime: DateTime, val summary: RepositoryDailySummary? = null)
+data class CategoryDateTimeCompletionRate(val dateTime: DateTime, val summary: RepositoryCategorySummary? = null)
 
 data class CompletionRate(val percentage: Int, val label: String)
 
@@ -40,6 +40,19 @@ data class Dialog(val dialogType: DialogType, val exerciseId: String)
 
 enum class DialogType { MainActivityLogWorkout, ProgressActivityLogWorkout, Progress }
 
+enum class RepositoryChangeType { SetAdded, SetEdited, SetRemoved, RoutineDeleted }
+
+/**
+ * A change to a logged workout. The repositoryRoutineId is its primary key, the routineId the routine it was
+ * logged from and the dayKey the day it was logged on, exerciseId is null when the whole workout changed.
+ */
+data class RepositoryChange(
+        val type: RepositoryChangeType,
+        val repositoryRoutineId: String,
+        val routineId: String,
+        val dayKey: Int,
+        val exerciseId: String? = null)
+
 enum class WeightMeasurementUnit constructor(val asString: String) {
     Kg("kg"), Lbs("lbs")
 }
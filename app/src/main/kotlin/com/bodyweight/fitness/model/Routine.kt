@@ -2,6 +2,7 @@ package com.bodyweight.fitness.model
 
 import com.bodyweight.fitness.utils.Preferences
 import java.io.Serializable
+import java.security.MessageDigest
 import java.util.*
 
 abstract class LinkedRoutine : Serializable {
@@ -9,7 +10,12 @@ abstract class LinkedRoutine : Serializable {
     abstract val type: RoutineType
 }
 
-class Routine(JSONRoutine: JSONRoutine) : Serializable {
+/**
+ * The exerciseIdForSection lookup returns the saved level of a section, it is only used while the routine is built.
+ */
+class Routine(
+        @Transient private val exerciseIdForSection: (String) -> String? = { Preferences.getExerciseIdForSection(it) }
+) : Serializable {
     var routineId: String = "routine0"
     var title: String = ""
     var subtitle: String = ""
@@ -22,95 +28,174 @@ class Routine(JSONRoutine: JSONRoutine) : Serializable {
     val linkedExercises = ArrayList<Exercise>()
     val linkedRoutine = ArrayList<LinkedRoutine>()
 
-    init {
+    private val categoriesById = HashMap<String, Category>()
+    private val sectionsById = HashMap<String, Section>()
+    private val exercisesById = HashMap<String, Exercise>()
+
+    /**
+     * Positions of the nodes in linkedRoutine and linkedExercises, so setLevel swaps a level in place.
+     */
+    private val linkedRoutinePositions = HashMap<LinkedRoutine, Int>()
+    private val linkedExercisePositions = HashMap<Exercise, Int>()
+
+    /**
+     * Hash of everything buildRealmRoutine copies from the routine, a stored workout with the same
+     * fingerprint matches this routine without comparing it exercise by exercise.
+     */
+    val fingerprint: String by lazy {
+        val digest = MessageDigest.getInstance("SHA-1")
+
+        val values = arrayListOf(routineId, title, subtitle)
+
+        for (exercise in exercises) {
+            val section = exercise.section!!
+            val category = exercise.category!!
+
+            values.addAll(listOf(category.categoryId, category.title))
+            values.addAll(listOf(section.sectionId, section.title, section.sectionMode.toString()))
+            values.addAll(listOf(exercise.exerciseId, exercise.title, exercise.description, exercise.defaultSet))
+        }
+
+        for (value in values) {
+            digest.update(value.toByteArray(Charsets.UTF_8))
+            digest.update(0)
+        }
+
+        digest.digest().joinToString("") { String.format("%02x", it) }
+    }
+
+    private var currentCategory: Category? = null
+    private var currentSection: Section? = null
+    private var currentExercise: Exercise? = null
+
+    constructor(
+            JSONRoutine: JSONRoutine,
+            exerciseIdForSection: (String) -> String? = { Preferences.getExerciseIdForSection(it) }
+    ) : this(exerciseIdForSection) {
         routineId = JSONRoutine.routineId
         title = JSONRoutine.title
         subtitle = JSONRoutine.subtitle
         shortDescription = JSONRoutine.shortDescription
         url = JSONRoutine.url
 
-        var currentCategory: Category? = null
-        var currentSection: Section? = null
-        var currentExercise: Exercise? = null
-
         for (JSONLinkedRoutine in JSONRoutine.routine) {
             if (JSONLinkedRoutine.routineType === RoutineType.Category) {
-                currentCategory = Category(JSONLinkedRoutine.categoryId, JSONLinkedRoutine.title)
-
-                categories.add(currentCategory)
-                linkedRoutine.add(currentCategory)
+                insertCategory(Category(JSONLinkedRoutine.categoryId, JSONLinkedRoutine.title))
             } else if (JSONLinkedRoutine.routineType === RoutineType.Section) {
-                currentSection = Section(
+                insertSection(Section(
                         JSONLinkedRoutine.sectionId,
                         JSONLinkedRoutine.title,
                         JSONLinkedRoutine.description,
-                        JSONLinkedRoutine.sectionMode)
-
-                currentCategory!!.insertSection(currentSection)
-
-                sections.add(currentSection)
-                linkedRoutine.add(currentSection)
+                        JSONLinkedRoutine.sectionMode))
             } else if (JSONLinkedRoutine.routineType === RoutineType.Exercise) {
-                val exercise = Exercise(
+                insertExercise(Exercise(
                         JSONLinkedRoutine.exerciseId,
                         JSONLinkedRoutine.level,
                         JSONLinkedRoutine.title,
                         JSONLinkedRoutine.description,
                         JSONLinkedRoutine.youTubeId,
                         JSONLinkedRoutine.videoId,
-                        JSONLinkedRoutine.defaultSet)
+                        JSONLinkedRoutine.defaultSet))
+            }
+        }
+    }
 
-                currentSection!!.insertExercise(exercise)
+    /**
+     * Categories, sections and exercises must be inserted in the order they appear in the routine file.
+     */
+    fun insertCategory(category: Category) {
+        currentCategory = category
 
-                exercises.add(exercise)
+        categories.add(category)
+        categoriesById.put(category.categoryId, category)
 
-                if (currentSection.sectionMode === SectionMode.Levels || currentSection.sectionMode === SectionMode.Pick) {
-                    val currentExerciseId: String? = Preferences.getExerciseIdForSection(currentSection.sectionId)
+        linkedRoutinePositions.put(category, linkedRoutine.size)
+        linkedRoutine.add(category)
+    }
 
-                    if (currentExerciseId != null) {
-                        if (exercise.exerciseId.matches(currentExerciseId.toRegex())) {
-                            linkedExercises.add(exercise)
-                            linkedRoutine.add(exercise)
+    fun insertSection(section: Section) {
+        currentCategory!!.insertSection(section)
 
-                            exercise.previous = currentExercise
+        currentSection = section
 
-                            if (currentExercise != null) {
-                                currentExercise.next = exercise
-                            }
+        sections.add(section)
+        sectionsById.put(section.sectionId, section)
 
-                            currentExercise = exercise
-                            currentSection.setCurrentLevel(exercise)
-                        }
-                    } else {
-                        if (currentSection.exercises.size == 1) {
-                            linkedExercises.add(exercise)
-                            linkedRoutine.add(exercise)
+        linkedRoutinePositions.put(section, linkedRoutine.size)
+        linkedRoutine.add(section)
+    }
 
-                            exercise.previous = currentExercise
+    fun insertExercise(exercise: Exercise) {
+        val currentSection = currentSection!!
 
-                            if (currentExercise != null) {
-                                currentExercise.next = exercise
-                            }
+        currentSection.insertExercise(exercise)
 
-                            currentExercise = exercise
-                        }
-                    }
-                } else {
-                    exercise.previous = currentExercise
+        exercises.add(exercise)
+        exercisesById.put(exercise.exerciseId, exercise)
 
-                    if (currentExercise != null) {
-                        currentExercise.next = exercise
-                    }
+        if (currentSection.sectionMode === SectionMode.Levels || currentSection.sectionMode === SectionMode.Pick) {
+            val currentExerciseId: String? = exerciseIdForSection(currentSection.sectionId)
 
-                    currentExercise = exercise
+            if (currentExerciseId != null) {
+                if (exercise.exerciseId == currentExerciseId) {
+                    linkExercise(exercise)
 
-                    linkedExercises.add(exercise)
-                    linkedRoutine.add(exercise)
+                    currentSection.setCurrentLevel(exercise)
+                }
+            } else {
+                if (currentSection.exercises.size == 1) {
+                    linkExercise(exercise)
                 }
             }
+        } else {
+            linkExercise(exercise)
         }
     }
 
+    private fun linkExercise(exercise: Exercise) {
+        linkedExercisePositions.put(exercise, linkedExercises.size)
+        linkedExercises.add(exercise)
+
+        linkedRoutinePositions.put(exercise, linkedRoutine.size)
+        linkedRoutine.add(exercise)
+
+        exercise.previous = currentExercise
+
+        currentExercise?.next = exercise
+
+        currentExercise = exercise
+    }
+
+    /**
+     * Moves every section to the level stored in the preferences, used when a cached routine is reused.
+     */
+    fun applyLevels() {
+        for (section in sections) {
+            if (section.sectionMode != SectionMode.Levels && section.sectionMode != SectionMode.Pick) {
+                continue
+            }
+
+            val exerciseId = Preferences.getExerciseIdForSection(section.sectionId) ?: continue
+            val exercise = getExercise(exerciseId) ?: continue
+
+            if (exercise.section === section) {
+                setLevel(exercise, section.getLevel(exercise))
+            }
+        }
+    }
+
+    fun getCategory(categoryId: String): Category? {
+        return categoriesById[categoryId]
+    }
+
+    fun getSection(sectionId: String): Section? {
+        return sectionsById[sectionId]
+    }
+
+    fun getExercise(exerciseId: String): Exercise? {
+        return exercisesById[exerciseId]
+    }
+
     fun setLevel(exercise: Exercise, level: Int) {
         val currentSectionExercise = exercise.section!!.currentExercise
 
@@ -131,14 +216,14 @@ class Routine(JSONRoutine: JSONRoutine) : Serializable {
             currentSectionExercise.previous = null
             currentSectionExercise.next = null
 
-            val indexOfCurrentExercise = linkedRoutine.indexOf(currentSectionExercise)
-            if (indexOfCurrentExercise > -1) {
-                linkedRoutine[indexOfCurrentExercise] = exercise
+            linkedRoutinePositions.remove(currentSectionExercise)?.let {
+                linkedRoutine[it] = exercise
+                linkedRoutinePositions.put(exercise, it)
             }
 
-            val indexOfLinkedExercise = linkedExercises.indexOf(currentSectionExercise)
-            if (indexOfLinkedExercise > -1) {
-                linkedExercises[indexOfLinkedExercise] = exercise
+            linkedExercisePositions.remove(currentSectionExercise)?.let {
+                linkedExercises[it] = exercise
+                linkedExercisePositions.put(exercise, it)
             }
         }
     }
@@ -180,6 +265,8 @@ class Section(
 
     val exercises = ArrayList<Exercise>()
 
+    private val levels = HashMap<Exercise, Int>()
+
     override val title: String
         get() = sectionTitle
 
@@ -187,17 +274,18 @@ class Section(
         get() = RoutineType.Section
 
     fun setCurrentLevel(exercise: Exercise) {
-        var current = 0
-        for (ex in exercises) {
-            if (ex == exercise) {
-                currentLevel = current
-                return
-            }
-
-            current++
+        levels[exercise]?.let {
+            currentLevel = it
         }
     }
 
+    /**
+     * Returns the level of the exercise in this section, or -1 when it belongs to another section.
+     */
+    fun getLevel(exercise: Exercise): Int {
+        return levels[exercise] ?: -1
+    }
+
     val availableLevels: Int
         get() {
             if (sectionMode == SectionMode.Levels || sectionMode == SectionMode.Pick) {
@@ -211,6 +299,7 @@ class Section(
         exercise.category = category
         exercise.section = this
 
+        levels.put(exercise, exercises.size)
         exercises.add(exercise)
     }
 
@@ -5,6 +5,7 @@ import com.bodyweight.fitness.formatSeconds
 import com.bodyweight.fitness.repository.Repository
 import com.bodyweight.fitness.utils.Preferences
 
+import io.realm.Realm
 import io.realm.RealmList
 import io.realm.RealmObject
 import io.realm.annotations.Index
@@ -17,6 +18,8 @@ import org.joda.time.Duration
 import org.joda.time.Minutes
 import org.joda.time.format.PeriodFormatterBuilder
 
+import java.io.StringWriter
+import java.io.Writer
 import java.util.*
 
 open class RepositoryRoutine(
@@ -32,9 +35,15 @@ open class RepositoryRoutine(
         @Index
         open var startTime: Date = Date(),
 
+        @Index
+        open var dayKey: Int = 0,
+
         @Index
         open var lastUpdatedTime: Date = Date(),
 
+        @Required
+        open var fingerprint: String = "",
+
         open var categories: RealmList<RepositoryCategory> = RealmList(),
         open var sections: RealmList<RepositorySection> = RealmList(),
         open var exercises: RealmList<RepositoryExercise> = RealmList()
@@ -63,6 +72,38 @@ open class RepositoryRoutine(
             }
         }
 
+        fun change(repositoryRoutine: RepositoryRoutine, type: RepositoryChangeType, exerciseId: String? = null): RepositoryChange {
+            return RepositoryChange(type, repositoryRoutine.id, repositoryRoutine.routineId, repositoryRoutine.dayKey, exerciseId)
+        }
+
+        /**
+         * Deletes the routine together with everything it owns, must be called inside a transaction.
+         */
+        fun delete(realm: Realm, repositoryRoutine: RepositoryRoutine) {
+            RepositoryDailySummary.delete(realm, repositoryRoutine)
+            RepositorySetHistory.delete(realm, repositoryRoutine)
+
+            for (exercise in repositoryRoutine.exercises) {
+                exercise.sets.deleteAllFromRealm()
+            }
+
+            repositoryRoutine.exercises.deleteAllFromRealm()
+            repositoryRoutine.sections.deleteAllFromRealm()
+            repositoryRoutine.categories.deleteAllFromRealm()
+            repositoryRoutine.deleteFromRealm()
+        }
+
+        /**
+         * Queries the exercises natively instead of copying them into a list to filter.
+         */
+        fun findExercise(repositoryRoutine: RepositoryRoutine, exerciseId: String): RepositoryExercise? {
+            if (!repositoryRoutine.exercises.isManaged) {
+                return repositoryRoutine.exercises.firstOrNull { it.exerciseId == exerciseId }
+            }
+
+            return repositoryRoutine.exercises.where().equalTo("exerciseId", exerciseId).findFirst()
+        }
+
         fun getStartTime(repositoryRoutine: RepositoryRoutine): String {
             return DateTime(repositoryRoutine.startTime)
                     .toString("HH:mm", Locale.ENGLISH)
@@ -74,10 +115,12 @@ open class RepositoryRoutine(
         }
 
         fun getWorkoutLength(repositoryRoutine: RepositoryRoutine): String {
-            val duration = Duration(
+            return formatWorkoutLength(Duration(
                     DateTime(repositoryRoutine.startTime),
-                    DateTime(repositoryRoutine.lastUpdatedTime))
+                    DateTime(repositoryRoutine.lastUpdatedTime)))
+        }
 
+        fun formatWorkoutLength(duration: Duration): String {
             val formatter =  PeriodFormatterBuilder()
                     .appendHours()
                     .appendSuffix("h ")
@@ -175,28 +218,157 @@ open class RepositoryRoutine(
             return content
         }
 
+        val csvHeader = "Date, Start Time, End Time, Workout Length, Routine, Exercise, Set Order, Reps, Weight, Minutes, Seconds\n"
+
         fun toCSV(repositoryRoutine: RepositoryRoutine): String {
+            val writer = StringWriter()
+
+            writer.write(csvHeader)
+            writeCSV(repositoryRoutine, writer, Preferences.weightMeasurementUnit.toString())
+
+            return writer.toString()
+        }
+
+        /**
+         * Appends the rows of the routine without the header, so many routines can share one file.
+         */
+        fun writeCSV(repositoryRoutine: RepositoryRoutine, writer: Writer, weightUnit: String) {
             val date = DateTime(repositoryRoutine.startTime).toString("d MMMM YYYY")
             val startTime = getStartTime(repositoryRoutine)
             val lastUpdatedTime = getLastUpdatedTime(repositoryRoutine)
             val workoutLength = getWorkoutLength(repositoryRoutine)
             val routineTitle = "${repositoryRoutine.title} - ${repositoryRoutine.subtitle}"
-            val weightUnit = Preferences.weightMeasurementUnit.toString()
-
-            var content = "Date, Start Time, End Time, Workout Length, Routine, Exercise, Set Order, Reps, Weight, Minutes, Seconds\n"
 
             for (exercise in getVisibleAndCompletedExercises(repositoryRoutine.exercises)) {
                 for ((index, set) in exercise.sets.withIndex()) {
-                    content += "$date,$startTime,$lastUpdatedTime,$workoutLength,$routineTitle,${exercise.title},${index + 1},${set.reps},${set.weight} $weightUnit,${set.seconds.formatMinutes(false)},${set.seconds.formatSeconds(false)}\n"
+                    writer.write("$date,$startTime,$lastUpdatedTime,$workoutLength,$routineTitle,${exercise.title},${index + 1},${set.reps},${set.weight} $weightUnit,${set.seconds.formatMinutes(false)},${set.seconds.formatSeconds(false)}\n")
                 }
             }
+        }
+    }
+}
 
-            return content
+open class RepositoryDailySummary(
+        @PrimaryKey @Required
+        open var id: String = "",
+
+        @Index
+        open var dayKey: Int = 0,
+
+        @Index
+        open var startTime: Date = Date(),
+
+        open var completionRate: Int = 0,
+        open var numberOfExercises: Int = 0,
+        open var numberOfCompletedExercises: Int = 0,
+
+        open var lengthInMinutes: Int = 0,
+        open var totalReps: Int = 0,
+        open var totalSeconds: Int = 0,
+        open var numberOfSets: Int = 0,
+
+        open var categories: RealmList<RepositoryCategorySummary> = RealmList()
+) : RealmObject() {
+    companion object {
+        /**
+         * Recomputes the summary of the routine, must be called inside a transaction.
+         * The summary shares the primary key of the routine it describes.
+         */
+        fun update(realm: Realm, repositoryRoutine: RepositoryRoutine): RepositoryDailySummary {
+            val summary = realm.where(RepositoryDailySummary::class.java)
+                    .equalTo("id", repositoryRoutine.id)
+                    .findFirst() ?: realm.createObject(RepositoryDailySummary::class.java, repositoryRoutine.id)
+
+            val exercises = RepositoryRoutine.getVisibleAndCompletedExercises(repositoryRoutine.exercises)
+
+            summary.dayKey = repositoryRoutine.dayKey
+            summary.startTime = repositoryRoutine.startTime
+            summary.completionRate = RepositoryRoutine.getCompletionRate(repositoryRoutine).percentage
+            summary.numberOfExercises = RepositoryRoutine.getNumberOfExercises(exercises)
+            summary.numberOfCompletedExercises = RepositoryRoutine.getNumberOfCompletedExercises(exercises)
+            summary.lengthInMinutes = RepositoryRoutine.getWorkoutLengthInMinutes(repositoryRoutine)
+
+            var totalReps = 0
+            var totalSeconds = 0
+            var numberOfSets = 0
+
+            for (exercise in exercises) {
+                if (RepositoryExercise.isCompleted(exercise)) {
+                    for (set in exercise.sets) {
+                        totalReps += set.reps
+                        totalSeconds += set.seconds
+                        numberOfSets += 1
+                    }
+                }
+            }
+
+            summary.totalReps = totalReps
+            summary.totalSeconds = totalSeconds
+            summary.numberOfSets = numberOfSets
+
+            for ((index, category) in repositoryRoutine.categories.withIndex()) {
+                val categoryExercises = RepositoryRoutine.getVisibleAndCompletedExercises(category.exercises)
+
+                val categorySummary = if (index < summary.categories.size) {
+                    summary.categories[index]
+                } else {
+                    realm.createObject(RepositoryCategorySummary::class.java, "${repositoryRoutine.id}-$index").apply {
+                        summary.categories.add(this)
+                    }
+                }
+
+                categorySummary.categoryId = category.categoryId
+                categorySummary.title = category.title
+                categorySummary.completionRate = RepositoryCategory.getCompletionRate(category).percentage
+                categorySummary.numberOfExercises = RepositoryRoutine.getNumberOfExercises(categoryExercises)
+                categorySummary.numberOfCompletedExercises = RepositoryRoutine.getNumberOfCompletedExercises(categoryExercises)
+            }
+
+            while (summary.categories.size > repositoryRoutine.categories.size) {
+                summary.categories.last().deleteFromRealm()
+            }
+
+            return summary
+        }
+
+        /**
+         * Deletes the summary of the routine, must be called inside a transaction.
+         */
+        fun delete(realm: Realm, repositoryRoutine: RepositoryRoutine) {
+            realm.where(RepositoryDailySummary::class.java)
+                    .equalTo("id", repositoryRoutine.id)
+                    .findFirst()?.let {
+                it.categories.deleteAllFromRealm()
+                it.deleteFromRealm()
+            }
+        }
+
+        /**
+         * Maps each day to its first summary, results sorted by descending start time give the latest workout.
+         */
+        fun byDayKey(summaries: List<RepositoryDailySummary>): Map<Int, RepositoryDailySummary> {
+            val map = HashMap<Int, RepositoryDailySummary>()
+
+            for (summary in summaries) {
+                if (!map.containsKey(summary.dayKey)) {
+                    map.put(summary.dayKey, summary)
+                }
+            }
+
+            return map
+        }
+
+        fun getCompletionRate(summary: RepositoryDailySummary): CompletionRate {
+            return CompletionRate(summary.completionRate, "${summary.completionRate}%")
+        }
+
+        fun getWorkoutLength(summary: RepositoryDailySummary): String {
+            return RepositoryRoutine.formatWorkoutLength(Duration.standardMinutes(summary.lengthInMinutes.toLong()))
         }
     }
 }
 
-open class RepositoryCategory(
+open class RepositoryCategorySummary(
         @PrimaryKey @Required
         open var id: String = "",
 
@@ -205,6 +377,26 @@ open class RepositoryCategory(
 
         open var title: String = "",
 
+        open var completionRate: Int = 0,
+        open var numberOfExercises: Int = 0,
+        open var numberOfCompletedExercises: Int = 0
+) : RealmObject() {
+    companion object {
+        fun getCompletionRate(summary: RepositoryCategorySummary): CompletionRate {
+            return CompletionRate(summary.completionRate, "${summary.completionRate}%")
+        }
+    }
+}
+
+open class RepositoryCategory(
+        @PrimaryKey
+        open var id: Long = 0,
+
+        @Index
+        open var categoryId: String = "",
+
+        open var title: String = "",
+
         open var routine: RepositoryRoutine? = null,
 
         open var sections: RealmList<RepositorySection> = RealmList(),
@@ -229,8 +421,8 @@ open class RepositoryCategory(
 }
 
 open class RepositorySection(
-        @PrimaryKey @Required
-        open var id: String = "",
+        @PrimaryKey
+        open var id: Long = 0,
 
         @Index
         open var sectionId: String = "",
@@ -245,8 +437,8 @@ open class RepositorySection(
 ) : RealmObject() {}
 
 open class RepositoryExercise(
-        @PrimaryKey @Required
-        open var id: String = "",
+        @PrimaryKey
+        open var id: Long = 0,
 
         @Index open var exerciseId: String = "",
 
@@ -281,10 +473,115 @@ open class RepositoryExercise(
     }
 }
 
-open class RepositorySet(
+/**
+ * Last id handed out for each class keyed by a long, so new objects get compact increasing keys.
+ */
+open class RepositorySequence(
+        @PrimaryKey @Required
+        open var name: String = "",
+
+        open var value: Long = 0
+) : RealmObject() {
+    companion object {
+        /**
+         * Allocates the next id of the class, must be called inside a transaction.
+         */
+        fun <T : RealmObject> nextId(realm: Realm, clazz: Class<T>): Long {
+            val sequence = realm.where(RepositorySequence::class.java)
+                    .equalTo("name", clazz.simpleName)
+                    .findFirst() ?: realm.createObject(RepositorySequence::class.java, clazz.simpleName).apply {
+                value = realm.where(clazz).max("id")?.toLong() ?: 0
+            }
+
+            sequence.value += 1
+
+            return sequence.value
+        }
+
+        fun <T : RealmObject> createObject(realm: Realm, clazz: Class<T>): T {
+            return realm.createObject(clazz, nextId(realm, clazz))
+        }
+    }
+}
+
+open class RepositorySetHistory(
         @PrimaryKey @Required
         open var id: String = "",
 
+        @Index
+        open var exerciseId: String = "",
+
+        @Index
+        open var repositoryExerciseId: Long = 0,
+
+        @Index
+        open var repositoryRoutineId: String = "",
+
+        @Index
+        open var dayKey: Int = 0,
+
+        @Index
+        open var startTime: Date = Date(),
+
+        open var title: String = "",
+
+        open var setIndex: Int = 0,
+        open var isTimed: Boolean = false,
+
+        open var weight: Double = 0.0,
+        open var reps: Int = 0,
+        open var seconds: Int = 0
+) : RealmObject() {
+    companion object {
+        /**
+         * Rewrites the history rows of the exercise, must be called inside a transaction.
+         * Only completed exercises are recorded, placeholder sets never show up in the history.
+         */
+        fun update(realm: Realm, repositoryExercise: RepositoryExercise) {
+            realm.where(RepositorySetHistory::class.java)
+                    .equalTo("repositoryExerciseId", repositoryExercise.id)
+                    .findAll()
+                    .deleteAllFromRealm()
+
+            val repositoryRoutine = repositoryExercise.routine ?: return
+
+            if (!RepositoryExercise.isCompleted(repositoryExercise)) {
+                return
+            }
+
+            for ((index, set) in repositoryExercise.sets.withIndex()) {
+                val history = realm.createObject(RepositorySetHistory::class.java, "${repositoryExercise.id}-$index")
+
+                history.exerciseId = repositoryExercise.exerciseId
+                history.repositoryExerciseId = repositoryExercise.id
+                history.repositoryRoutineId = repositoryRoutine.id
+                history.dayKey = repositoryRoutine.dayKey
+                history.startTime = repositoryRoutine.startTime
+                history.title = repositoryExercise.title
+                history.setIndex = index
+                history.isTimed = set.isTimed
+                history.weight = set.weight
+                history.reps = set.reps
+                history.seconds = set.seconds
+            }
+        }
+
+        /**
+         * Deletes the history rows of the routine, must be called inside a transaction.
+         */
+        fun delete(realm: Realm, repositoryRoutine: RepositoryRoutine) {
+            realm.where(RepositorySetHistory::class.java)
+                    .equalTo("repositoryRoutineId", repositoryRoutine.id)
+                    .findAll()
+                    .deleteAllFromRealm()
+        }
+    }
+}
+
+open class RepositorySet(
+        @PrimaryKey
+        open var id: Long = 0,
+
         open var isTimed: Boolean = false,
 
         open var weight: Double = 0.0,
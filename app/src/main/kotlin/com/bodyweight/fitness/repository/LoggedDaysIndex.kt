@@ -0,0 +1,120 @@
+package com.bodyweight.fitness.repository
+
+import com.bodyweight.fitness.model.RepositoryChangeType
+import com.bodyweight.fitness.model.RepositoryRoutine
+import com.bodyweight.fitness.stream.StateStore
+import com.bodyweight.fitness.stream.Stream
+
+import rx.Observable
+import rx.Subscription
+
+import java.util.BitSet
+
+/**
+ * Set of local days (see toDayKey) that have at least one logged routine.
+ * Loaded on the database thread and kept up to date from the typed repository changes.
+ * Must be used from the main thread.
+ */
+object LoggedDaysIndex {
+    private val loggedDays = BitSet()
+    private var isStarted = false
+    private var isLoaded = false
+    private var loading: Subscription? = null
+
+    /**
+     * Counts the changes to the index, so views showing logged days know when to look again.
+     */
+    private val revisionState = StateStore(0)
+
+    /**
+     * The index is loaded once something first shows logged days.
+     */
+    val observable: Observable<Int>
+        get() {
+            start()
+
+            return revisionState.observable
+        }
+
+    private fun start() {
+        if (isStarted) {
+            return
+        }
+
+        isStarted = true
+
+        load()
+
+        Stream.repositoryObservable().subscribe {
+            if (!isLoaded) {
+                load()
+            } else if (it.type == RepositoryChangeType.RoutineDeleted) {
+                refreshDay(it.dayKey)
+            } else if (it.type == RepositoryChangeType.SetAdded || it.type == RepositoryChangeType.SetEdited) {
+                markLogged(it.dayKey)
+            }
+        }
+    }
+
+    /**
+     * False until the index is loaded.
+     */
+    fun isLogged(dayKey: Int): Boolean {
+        return dayKey >= 0 && loggedDays.get(dayKey)
+    }
+
+    private fun markLogged(dayKey: Int) {
+        if (dayKey >= 0 && !loggedDays.get(dayKey)) {
+            loggedDays.set(dayKey)
+
+            revisionState.value += 1
+        }
+    }
+
+    /**
+     * Re-checks a single day, used after routines for that day were removed.
+     */
+    private fun refreshDay(dayKey: Int) {
+        if (dayKey < 0) {
+            return
+        }
+
+        RepositoryReader.read {
+            it.where(RepositoryRoutine::class.java)
+                    .equalTo("dayKey", dayKey)
+                    .count() > 0
+        }.subscribe {
+            if (loggedDays.get(dayKey) != it) {
+                loggedDays.set(dayKey, it)
+
+                revisionState.value += 1
+            }
+        }
+    }
+
+    /**
+     * A change that arrives while loading starts the load again, the reads run in order so the new one sees it.
+     */
+    private fun load() {
+        loading?.unsubscribe()
+
+        loading = RepositoryReader.read {
+            val days = BitSet()
+
+            for (repositoryRoutine in it.where(RepositoryRoutine::class.java).findAll()) {
+                if (repositoryRoutine.dayKey >= 0) {
+                    days.set(repositoryRoutine.dayKey)
+                }
+            }
+
+            days
+        }.subscribe {
+            loggedDays.clear()
+            loggedDays.or(it)
+
+            isLoaded = true
+
+            revisionState.value += 1
+        }
+    }
+}
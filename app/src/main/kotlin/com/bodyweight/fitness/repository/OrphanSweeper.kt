@@ -0,0 +1,145 @@
+package com.bodyweight.fitness.repository
+
+import com.bodyweight.fitness.model.RepositoryCategory
+import com.bodyweight.fitness.model.RepositoryExercise
+import com.bodyweight.fitness.model.RepositorySection
+import com.bodyweight.fitness.model.RepositorySet
+import com.bodyweight.fitness.utils.Preferences
+
+import io.realm.Realm
+import io.realm.RealmObject
+
+import rx.Observable
+import rx.schedulers.Schedulers
+
+data class SweepResult(val deletedObjects: Int, val reclaimedBytes: Long, val isCompacted: Boolean)
+
+/**
+ * Deletes objects left behind by routines removed before deletes cascaded, then compacts the file.
+ * Files written under an older schema are swept once, on a background thread after the routine is ready.
+ * Realm only compacts a file no instance holds open, so the compaction waits until the pool has closed
+ * every instance, which happens once the app leaves the foreground.
+ */
+object OrphanSweeper {
+    private val batchSize = 500
+
+    val isSweepPending: Boolean
+        get() = Preferences.sweptSchemaVersion < RepositoryMigration.schemaVersion
+
+    /**
+     * Sweeps when the schema changed since the last sweep, then compacts when the sweep or an earlier one
+     * left a compaction pending. Emits once the work is done.
+     */
+    fun run(): Observable<SweepResult> {
+        val swept = if (isSweepPending) sweep() else Observable.just(0)
+
+        return swept.flatMap { deletedObjects ->
+            if (Preferences.compactionPending) {
+                compactWhenIdle().map { SweepResult(deletedObjects, it, true) }
+            } else {
+                Observable.just(SweepResult(deletedObjects, 0, false))
+            }
+        }
+    }
+
+    /**
+     * Emits the number of deleted objects.
+     */
+    fun sweep(): Observable<Int> {
+        return Observable.fromCallable {
+            val deletedObjects = Repository.withRealm {
+                relinkSets(it)
+
+                var deleted = 0
+
+                deleted += deleteOrphans(it, RepositoryCategory::class.java, "routine")
+                deleted += deleteOrphans(it, RepositorySection::class.java, "routine")
+                deleted += deleteOrphans(it, RepositoryExercise::class.java, "routine")
+
+                /**
+                 * Sets of the exercises deleted above lose their back-link, so they are swept last.
+                 */
+                deleted += deleteOrphans(it, RepositorySet::class.java, "exercise")
+
+                deleted
+            }
+
+            if (deletedObjects > 0) {
+                Preferences.compactionPending = true
+            }
+
+            Preferences.sweptSchemaVersion = RepositoryMigration.schemaVersion
+
+            deletedObjects
+        }.subscribeOn(Schedulers.io())
+    }
+
+    /**
+     * Compacts on a background thread the next time no instance is open, emits the reclaimed bytes.
+     * An instance opened in between makes the attempt fail, the next time the pool is idle tries again.
+     */
+    fun compactWhenIdle(): Observable<Long> {
+        return Repository.idleObservable
+                .startWith(Unit)
+                .observeOn(Schedulers.io())
+                .filter { Repository.openInstances == 0 }
+                .map {
+                    val sizeBefore = Repository.fileSize
+
+                    if (Repository.compact()) Math.max(sizeBefore - Repository.fileSize, 0L) else -1L
+                }
+                .filter { it >= 0 }
+                .first()
+                .doOnNext { Preferences.compactionPending = false }
+    }
+
+    /**
+     * Schema migrations used to move sets into the new exercise without updating their back-link,
+     * point them at the exercise that holds them so they survive the removal of the old one.
+     */
+    private fun relinkSets(realm: Realm) {
+        val exercises = realm.where(RepositoryExercise::class.java).isNotNull("routine").findAll()
+
+        var index = 0
+
+        while (index < exercises.size) {
+            val end = Math.min(index + batchSize, exercises.size)
+
+            realm.executeTransaction {
+                for (position in index until end) {
+                    val exercise = exercises[position]
+
+                    for (set in exercise.sets) {
+                        if (set.exercise?.id != exercise.id) {
+                            set.exercise = exercise
+                        }
+                    }
+                }
+            }
+
+            index = end
+        }
+    }
+
+    private fun <T : RealmObject> deleteOrphans(realm: Realm, clazz: Class<T>, backLink: String): Int {
+        var deleted = 0
+
+        while (true) {
+            var batch = 0
+
+            realm.executeTransaction {
+                val results = it.where(clazz).isNull(backLink).findAll()
+
+                while (batch < batchSize && results.deleteFirstFromRealm()) {
+                    batch += 1
+                }
+            }
+
+            deleted += batch
+
+            if (batch < batchSize) {
+                return deleted
+            }
+        }
+    }
+}
@@ -2,46 +2,166 @@ package com.bodyweight.fitness.repository
 
 import org.joda.time.DateTime
 
+import java.io.File
 import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
 
 import com.bodyweight.fitness.App
+import com.bodyweight.fitness.Constants
+import com.bodyweight.fitness.toDayKey
 import com.bodyweight.fitness.model.*
 import com.bodyweight.fitness.stream.RoutineStream
+import com.bodyweight.fitness.stream.Stream
 
-import io.realm.DynamicRealm
-import io.realm.DynamicRealmObject
 import io.realm.Realm
 import io.realm.RealmConfiguration
 
+import rx.Observable
+import rx.subjects.PublishSubject
+
 object Repository {
     private val realmName = "bodyweight.fitness.realm"
 
+    private class RealmReference(val realm: Realm) {
+        var count = 0
+    }
+
+    private val configuration: RealmConfiguration by lazy {
+        Realm.init(App.context)
+
+        RealmConfiguration.Builder()
+                .name(realmName)
+                .schemaVersion(RepositoryMigration.schemaVersion)
+                .migration(RepositoryMigration())
+                .build()
+    }
+
+    private val threadRealm = ThreadLocal<RealmReference>()
+
+    private val openedInstances = AtomicInteger()
+    private val closedInstances = AtomicInteger()
+
+    private val idleSubject = PublishSubject.create<Unit>().toSerialized()
+
+    /**
+     * Number of Realm instances currently held open by the pool, one at most per thread.
+     */
+    val openInstances: Int
+        get() = openedInstances.get() - closedInstances.get()
+
+    /**
+     * Number of Realm instances opened by the pool since the process started.
+     */
+    val totalOpenedInstances: Int
+        get() = openedInstances.get()
+
+    /**
+     * Returns the Realm instance of the calling thread, opening it on first use.
+     * The instance stays open until the last acquire scope on this thread is released.
+     */
     val realm: Realm
-        get() {
-            Realm.init(App.context)
-
-            val configuration = RealmConfiguration.Builder()
-                    .name(realmName)
-                    .schemaVersion(2)
-                    .migration { realm: DynamicRealm, oldVersion: Long, newVersion: Long ->
-                        val schema = realm.schema
-                        val routineSchema = schema.get("RepositoryRoutine")
-
-                        if (oldVersion.toInt() == 1) {
-                            routineSchema
-                                    .addField("title", String::class.java)
-                                    .addField("subtitle", String::class.java)
-                                    .transform { obj: DynamicRealmObject ->
-                                        obj.set("title", "Bodyweight Fitness")
-                                        obj.set("subtitle", "Recommended Routine")
-                                    }
-                        }
-                    }
-                    .build()
+        get() = reference().realm
+
+    fun acquire(): Realm {
+        val reference = reference()
+
+        reference.count += 1
+
+        return reference.realm
+    }
+
+    fun release() {
+        val reference = threadRealm.get() ?: return
+
+        reference.count -= 1
+
+        if (reference.count <= 0) {
+            close(reference)
+        }
+    }
+
+    /**
+     * Closes the instance the calling thread opened through the realm getter, when no acquire scope holds it.
+     */
+    fun releaseIdle() {
+        val reference = threadRealm.get() ?: return
+
+        if (reference.count <= 0) {
+            close(reference)
+        }
+    }
+
+    fun <T> withRealm(block: (Realm) -> T): T {
+        val realm = acquire()
+
+        try {
+            return block(realm)
+        } finally {
+            release()
+        }
+    }
+
+    /**
+     * Size of the Realm file on disk in bytes.
+     */
+    val fileSize: Long
+        get() = File(configuration.path).length()
+
+    /**
+     * Emits on the releasing thread each time the pool closes its last open instance.
+     */
+    val idleObservable: Observable<Unit>
+        get() = idleSubject
+
+    /**
+     * Compacts the Realm file, which is only possible while no thread holds it open, returns false otherwise.
+     */
+    fun compact(): Boolean {
+        if (openInstances != 0) {
+            return false
+        }
+
+        try {
+            return Realm.compactRealm(configuration)
+        } catch (e: IllegalStateException) {
+            return false
+        }
+    }
+
+    private fun close(reference: RealmReference) {
+        threadRealm.remove()
+
+        if (!reference.realm.isClosed) {
+            reference.realm.close()
+        }
+
+        closedInstances.incrementAndGet()
+
+        if (openInstances == 0) {
+            idleSubject.onNext(Unit)
+        }
+    }
+
+    private fun reference(): RealmReference {
+        val current = threadRealm.get()
 
-            return Realm.getInstance(configuration)
+        if (current != null && !current.realm.isClosed) {
+            return current
         }
 
+        if (current != null) {
+            closedInstances.incrementAndGet()
+        }
+
+        val reference = RealmReference(Realm.getInstance(configuration))
+        reference.count = current?.count ?: 0
+
+        threadRealm.set(reference)
+        openedInstances.incrementAndGet()
+
+        return reference
+    }
+
     fun buildRealmRoutine(routine: Routine): RepositoryRoutine {
         var repositoryRoutine: RepositoryRoutine? = null
 
@@ -51,37 +171,23 @@ object Repository {
                 it.routineId = routine.routineId
                 it.title = routine.title
                 it.subtitle = routine.subtitle
+                it.fingerprint = routine.fingerprint
                 it.startTime = DateTime().toDate()
+                it.dayKey = DateTime(it.startTime).toDayKey()
                 it.lastUpdatedTime = DateTime().toDate()
 
                 var repositoryCategory: RepositoryCategory? = null
                 var repositorySection: RepositorySection? = null
 
                 for (exercise in routine.exercises) {
-                    val repositoryExercise = realm.createObject(RepositoryExercise::class.java, "Exercise-" + UUID.randomUUID().toString())
+                    val repositoryExercise = RepositorySequence.createObject(realm, RepositoryExercise::class.java)
                     repositoryExercise.exerciseId = exercise.exerciseId
                     repositoryExercise.title = exercise.title
                     repositoryExercise.description = exercise.description
                     repositoryExercise.defaultSet = exercise.defaultSet
 
-                    val repositorySetId = "Set-" + UUID.randomUUID().toString()
-                    val repositorySet = realm.createObject(RepositorySet::class.java, repositorySetId)
-
-                    if (exercise.defaultSet == "weighted") {
-                        repositorySet.isTimed = false
-                    } else {
-                        repositorySet.isTimed = true
-                    }
-
-                    repositorySet.seconds = 0
-                    repositorySet.weight = 0.0
-                    repositorySet.reps = 0
-                    repositorySet.exercise = repositoryExercise
-
-                    repositoryExercise.sets.add(repositorySet)
-
                     if (repositoryCategory == null || !repositoryCategory.title.equals(exercise.category!!.title, ignoreCase = true)) {
-                        repositoryCategory = realm.createObject(RepositoryCategory::class.java, "Category-" + UUID.randomUUID().toString())
+                        repositoryCategory = RepositorySequence.createObject(realm, RepositoryCategory::class.java)
                         repositoryCategory.categoryId = exercise.category!!.categoryId
                         repositoryCategory.title = exercise.category!!.title
                         repositoryCategory.routine = repositoryRoutine
@@ -90,7 +196,7 @@ object Repository {
                     }
 
                     if (repositorySection == null || !repositorySection.title.equals(exercise.section!!.title, ignoreCase = true)) {
-                        repositorySection = realm.createObject(RepositorySection::class.java, "Section-" + UUID.randomUUID().toString())
+                        repositorySection = RepositorySequence.createObject(realm, RepositorySection::class.java)
                         repositorySection.sectionId = exercise.section!!.sectionId
                         repositorySection.title = exercise.section!!.title
                         repositorySection.mode = exercise.section!!.sectionMode.toString()
@@ -122,46 +228,98 @@ object Repository {
                     repositoryCategory!!.exercises.add(repositoryExercise)
                     repositorySection!!.exercises.add(repositoryExercise)
                 }
+
+                RepositoryDailySummary.update(realm, it)
             }
         }
 
         return repositoryRoutine!!
     }
 
+    /**
+     * Returns the materialized summary of the routine without writing one. Every write path keeps it up to date
+     * and the migration backfills it, readers that find none fall back to walking the workout.
+     */
+    fun getDailySummary(repositoryRoutine: RepositoryRoutine): RepositoryDailySummary? {
+        return realm.where(RepositoryDailySummary::class.java)
+                .equalTo("id", repositoryRoutine.id)
+                .findFirst()
+    }
+
     fun getRepositoryRoutineForPrimaryKeyRoutineId(primaryKeyRoutineId: String): RepositoryRoutine {
         return realm.where(RepositoryRoutine::class.java).equalTo("id", primaryKeyRoutineId).findFirst()
     }
 
-    val repositoryRoutineForToday: RepositoryRoutine
-        get() {
-            val start = DateTime().withTimeAtStartOfDay().toDate()
-            val end = DateTime().withTimeAtStartOfDay().plusDays(1).minusSeconds(1).toDate()
+    /**
+     * Returns today's workout of the current routine without creating it.
+     */
+    fun findRepositoryRoutineForToday(): RepositoryRoutine? {
+        val routineId = RoutineStream.routine.routineId
 
-            val routineId = RoutineStream.routine.routineId
+        return realm.where(RepositoryRoutine::class.java)
+                .equalTo("dayKey", DateTime().toDayKey())
+                .equalTo("routineId", routineId)
+                .findFirst()
+    }
 
-            var repositoryRoutine: RepositoryRoutine? = realm.where(RepositoryRoutine::class.java)
-                    .between("startTime", start, end)
-                    .equalTo("routineId", routineId)
-                    .findFirst()
+    /**
+     * Returns today's workout, writing it only once something is about to be logged.
+     * Exercises start without sets, a set is created when the user logs it.
+     */
+    fun getOrCreateRepositoryRoutineForToday(): RepositoryRoutine {
+        return findRepositoryRoutineForToday() ?: buildRealmRoutine(RoutineStream.routine)
+    }
 
-            if (repositoryRoutine == null) {
-                repositoryRoutine = buildRealmRoutine(RoutineStream.routine)
-            }
+    /**
+     * Logs a timed set for the exercise in today's workout, filling in the empty first set when there is one.
+     * Returns false when the exercise is not in the workout or already has the maximum number of sets.
+     */
+    fun logTimedSet(exerciseId: String, seconds: Int): Boolean {
+        val repositoryRoutine = getOrCreateRepositoryRoutineForToday()
 
-            return repositoryRoutine
-        }
+        var change: RepositoryChange? = null
 
-    fun repositoryRoutineForTodayExists(): Boolean {
-        val start = DateTime().withTimeAtStartOfDay().toDate()
-        val end = DateTime().withTimeAtStartOfDay().plusDays(1).minusSeconds(1).toDate()
+        realm.executeTransaction {
+            RepositoryRoutine.findExercise(repositoryRoutine, exerciseId)?.let {
+                val numberOfSets = it.sets.size
 
-        val routineId = RoutineStream.routine.routineId
+                if (numberOfSets < Constants.maximumNumberOfSets) {
+                    val firstSet = it.sets.firstOrNull()
 
-        realm.where(RepositoryRoutine::class.java)
-                .between("startTime", start, end)
-                .equalTo("routineId", routineId)
-                .findFirst() ?: return false
+                    if (firstSet != null && numberOfSets == 1 && firstSet.isTimed && firstSet.seconds == 0) {
+                        firstSet.seconds = seconds
+
+                        change = RepositoryRoutine.change(repositoryRoutine, RepositoryChangeType.SetEdited, exerciseId)
+                    } else {
+                        val repositorySet = RepositorySequence.createObject(realm, RepositorySet::class.java)
 
-        return true
+                        repositorySet.isTimed = true
+                        repositorySet.seconds = seconds
+                        repositorySet.weight = 0.0
+                        repositorySet.reps = 0
+
+                        repositorySet.exercise = it
+
+                        it.sets.add(repositorySet)
+
+                        change = RepositoryRoutine.change(repositoryRoutine, RepositoryChangeType.SetAdded, exerciseId)
+                    }
+
+                    RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = true)
+                    RepositoryDailySummary.update(realm, repositoryRoutine)
+                    RepositorySetHistory.update(realm, it)
+                }
+            }
+        }
+
+        change?.let {
+            Stream.setRepository(it)
+        }
+
+        return change != null
+    }
+
+    fun repositoryRoutineForTodayExists(): Boolean {
+        return findRepositoryRoutineForToday() != null
     }
 }
@@ -0,0 +1,304 @@
+package com.bodyweight.fitness.repository
+
+import com.bodyweight.fitness.toDayKey
+
+import io.realm.DynamicRealm
+import io.realm.DynamicRealmObject
+import io.realm.FieldAttribute
+import io.realm.RealmMigration
+import io.realm.RealmObjectSchema
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeConstants
+
+import java.util.Date
+
+class RepositoryMigration : RealmMigration {
+    companion object {
+        val schemaVersion = 7L
+    }
+
+    override fun migrate(realm: DynamicRealm, oldVersion: Long, newVersion: Long) {
+        val schema = realm.schema
+        val routineSchema = schema.get("RepositoryRoutine")
+
+        var version = oldVersion
+        var rebuildSetHistory = false
+
+        if (version == 1L) {
+            routineSchema
+                    .addField("title", String::class.java)
+                    .addField("subtitle", String::class.java)
+                    .transform { obj: DynamicRealmObject ->
+                        obj.set("title", "Bodyweight Fitness")
+                        obj.set("subtitle", "Recommended Routine")
+                    }
+
+            version++
+        }
+
+        /**
+         * Local day of the workout, used for equality lookups instead of startTime ranges.
+         */
+        if (version == 2L) {
+            routineSchema
+                    .addField("dayKey", Int::class.java, FieldAttribute.INDEXED)
+                    .transform { obj: DynamicRealmObject ->
+                        obj.setInt("dayKey", DateTime(obj.getDate("startTime")).toDayKey())
+                    }
+
+            version++
+        }
+
+        /**
+         * Materialized per-workout statistics read by the home, calendar and progress screens.
+         */
+        if (version == 3L) {
+            val categorySummarySchema = schema.create("RepositoryCategorySummary")
+                    .addField("id", String::class.java, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                    .addField("categoryId", String::class.java, FieldAttribute.INDEXED)
+                    .addField("title", String::class.java)
+                    .addField("completionRate", Int::class.java)
+                    .addField("numberOfExercises", Int::class.java)
+                    .addField("numberOfCompletedExercises", Int::class.java)
+
+            schema.create("RepositoryDailySummary")
+                    .addField("id", String::class.java, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                    .addField("dayKey", Int::class.java, FieldAttribute.INDEXED)
+                    .addField("startTime", Date::class.java, FieldAttribute.INDEXED)
+                    .addField("completionRate", Int::class.java)
+                    .addField("numberOfExercises", Int::class.java)
+                    .addField("numberOfCompletedExercises", Int::class.java)
+                    .addField("lengthInMinutes", Int::class.java)
+                    .addField("totalReps", Int::class.java)
+                    .addField("totalSeconds", Int::class.java)
+                    .addField("numberOfSets", Int::class.java)
+                    .addRealmListField("categories", categorySummarySchema)
+
+            for (routine in realm.where("RepositoryRoutine").findAll()) {
+                createDailySummary(realm, routine)
+            }
+
+            version++
+        }
+
+        /**
+         * Flat per-set history of completed exercises, read by the exercise progress screen.
+         */
+        if (version == 4L) {
+            schema.create("RepositorySetHistory")
+                    .addField("id", String::class.java, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                    .addField("exerciseId", String::class.java, FieldAttribute.INDEXED)
+                    .addField("repositoryExerciseId", String::class.java, FieldAttribute.INDEXED)
+                    .addField("repositoryRoutineId", String::class.java, FieldAttribute.INDEXED)
+                    .addField("dayKey", Int::class.java, FieldAttribute.INDEXED)
+                    .addField("startTime", Date::class.java, FieldAttribute.INDEXED)
+                    .addField("title", String::class.java)
+                    .addField("setIndex", Int::class.java)
+                    .addField("isTimed", Boolean::class.java)
+                    .addField("weight", Double::class.java)
+                    .addField("reps", Int::class.java)
+                    .addField("seconds", Int::class.java)
+
+            rebuildSetHistory = true
+
+            version++
+        }
+
+        /**
+         * Long keys handed out by RepositorySequence replace the prefixed UUID strings.
+         * Links are stored by row, so only the keys themselves and the history rows that copy them change.
+         */
+        if (version == 5L) {
+            val sequenceSchema = schema.create("RepositorySequence")
+                    .addField("name", String::class.java, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                    .addField("value", Long::class.java)
+
+            for (className in arrayOf("RepositoryCategory", "RepositorySection", "RepositoryExercise", "RepositorySet")) {
+                val count = rewriteKeys(schema.get(className))
+
+                realm.createObject(sequenceSchema.className, className).setLong("value", count)
+            }
+
+            schema.get("RepositorySetHistory")
+                    .removeField("repositoryExerciseId")
+                    .addField("repositoryExerciseId", Long::class.java, FieldAttribute.INDEXED)
+
+            rebuildSetHistory = true
+
+            version++
+        }
+
+        /**
+         * Stored workouts start without a fingerprint, so the first check compares them in full.
+         */
+        if (version == 6L) {
+            routineSchema
+                    .addField("fingerprint", String::class.java, FieldAttribute.REQUIRED)
+
+            version++
+        }
+
+        if (rebuildSetHistory) {
+            realm.delete("RepositorySetHistory")
+
+            for (routine in realm.where("RepositoryRoutine").findAll()) {
+                createSetHistory(realm, routine)
+            }
+        }
+    }
+
+    /**
+     * Replaces the string primary key with ids counting up from one, returns the last id.
+     */
+    private fun rewriteKeys(objectSchema: RealmObjectSchema): Long {
+        var id = 0L
+
+        objectSchema
+                .addField("longId", Long::class.java)
+                .transform { obj: DynamicRealmObject ->
+                    id += 1
+
+                    obj.setLong("longId", id)
+                }
+                .removePrimaryKey()
+                .removeField("id")
+                .renameField("longId", "id")
+                .addPrimaryKey("id")
+
+        return id
+    }
+
+    private fun createDailySummary(realm: DynamicRealm, routine: DynamicRealmObject) {
+        val id = routine.getString("id")
+        val startTime = routine.getDate("startTime")
+        val lastUpdatedTime = routine.getDate("lastUpdatedTime")
+
+        val summary = realm.createObject("RepositoryDailySummary", id)
+
+        val total = countExercises(routine.getList("exercises"))
+
+        var totalReps = 0
+        var totalSeconds = 0
+        var numberOfSets = 0
+
+        for (exercise in routine.getList("exercises")) {
+            val sets = exercise.getList("sets")
+
+            if (isCompleted(sets)) {
+                for (set in sets) {
+                    totalReps += set.getInt("reps")
+                    totalSeconds += set.getInt("seconds")
+                    numberOfSets += 1
+                }
+            }
+        }
+
+        summary.setInt("dayKey", routine.getInt("dayKey"))
+        summary.setDate("startTime", startTime)
+        summary.setInt("completionRate", completionRate(total))
+        summary.setInt("numberOfExercises", total.first)
+        summary.setInt("numberOfCompletedExercises", total.second)
+        summary.setInt("lengthInMinutes", ((lastUpdatedTime.time - startTime.time) / DateTimeConstants.MILLIS_PER_MINUTE).toInt())
+        summary.setInt("totalReps", totalReps)
+        summary.setInt("totalSeconds", totalSeconds)
+        summary.setInt("numberOfSets", numberOfSets)
+
+        val categories = summary.getList("categories")
+
+        for ((index, category) in routine.getList("categories").withIndex()) {
+            val categoryTotal = countExercises(category.getList("exercises"))
+
+            val categorySummary = realm.createObject("RepositoryCategorySummary", "$id-$index")
+
+            categorySummary.setString("categoryId", category.getString("categoryId"))
+            categorySummary.setString("title", category.getString("title"))
+            categorySummary.setInt("completionRate", completionRate(categoryTotal))
+            categorySummary.setInt("numberOfExercises", categoryTotal.first)
+            categorySummary.setInt("numberOfCompletedExercises", categoryTotal.second)
+
+            categories.add(categorySummary)
+        }
+    }
+
+    private fun createSetHistory(realm: DynamicRealm, routine: DynamicRealmObject) {
+        for (exercise in routine.getList("exercises")) {
+            val sets = exercise.getList("sets")
+
+            if (!isCompleted(sets)) {
+                continue
+            }
+
+            for ((index, set) in sets.withIndex()) {
+                val history = realm.createObject("RepositorySetHistory", "${exercise.getLong("id")}-$index")
+
+                history.setString("exerciseId", exercise.getString("exerciseId"))
+                history.setLong("repositoryExerciseId", exercise.getLong("id"))
+                history.setString("repositoryRoutineId", routine.getString("id"))
+                history.setInt("dayKey", routine.getInt("dayKey"))
+                history.setDate("startTime", routine.getDate("startTime"))
+                history.setString("title", exercise.getString("title"))
+                history.setInt("setIndex", index)
+                history.setBoolean("isTimed", set.getBoolean("isTimed"))
+                history.setDouble("weight", set.getDouble("weight"))
+                history.setInt("reps", set.getInt("reps"))
+                history.setInt("seconds", set.getInt("seconds"))
+            }
+        }
+    }
+
+    /**
+     * Mirrors RepositoryRoutine.getNumberOfExercises and getNumberOfCompletedExercises.
+     */
+    private fun countExercises(exercises: List<DynamicRealmObject>): Pair<Int, Int> {
+        var numberOfExercises = 0
+        var numberOfCompletedExercises = 0
+
+        for (exercise in exercises) {
+            val isCompleted = isCompleted(exercise.getList("sets"))
+
+            if (exercise.getBoolean("visible") || isCompleted) {
+                numberOfExercises += 1
+            }
+
+            if (isCompleted) {
+                numberOfCompletedExercises += 1
+            }
+        }
+
+        return Pair(numberOfExercises, numberOfCompletedExercises)
+    }
+
+    private fun completionRate(total: Pair<Int, Int>): Int {
+        if (total.first == 0) {
+            return 0
+        }
+
+        return total.second * 100 / total.first
+    }
+
+    /**
+     * Mirrors RepositoryExercise.isCompleted.
+     */
+    private fun isCompleted(sets: List<DynamicRealmObject>): Boolean {
+        if (sets.isEmpty()) {
+            return false
+        }
+
+        val firstSet = sets[0]
+
+        if (sets.size == 1 && firstSet.getInt("seconds") == 0 && firstSet.getInt("reps") == 0) {
+            return false
+        }
+
+        return true
+    }
+
+    override fun equals(other: Any?): Boolean {
+        return other is RepositoryMigration
+    }
+
+    override fun hashCode(): Int {
+        return RepositoryMigration::class.java.hashCode()
+    }
+}
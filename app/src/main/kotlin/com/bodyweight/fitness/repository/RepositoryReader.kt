@@ -0,0 +1,216 @@
+package com.bodyweight.fitness.repository
+
+import android.os.HandlerThread
+
+import com.bodyweight.fitness.dialog.LogWorkoutPresenter
+import com.bodyweight.fitness.model.CompletionRate
+import com.bodyweight.fitness.model.RepositoryCategory
+import com.bodyweight.fitness.model.RepositoryCategorySummary
+import com.bodyweight.fitness.model.RepositoryDailySummary
+import com.bodyweight.fitness.model.RepositoryRoutine
+import com.bodyweight.fitness.toDayKey
+
+import io.realm.Realm
+import io.realm.Sort
+
+import org.joda.time.DateTime
+
+import rx.Observable
+import rx.Scheduler
+import rx.android.schedulers.AndroidSchedulers
+
+import java.util.Date
+
+data class RoutineSnapshot(
+        val id: String,
+        val title: String,
+        val subtitle: String,
+        val startTime: Date,
+        val dayKey: Int,
+        val completionRate: CompletionRate)
+
+data class CategoryProgressSnapshot(val title: String, val completionRate: CompletionRate)
+
+/**
+ * The repositoryRoutineId is null when nothing has been logged today.
+ */
+data class TodaysProgressSnapshot(
+        val repositoryRoutineId: String?,
+        val completionRate: Int,
+        val categories: List<CategoryProgressSnapshot>)
+
+data class WorkoutStatisticsSnapshot(
+        val totalWorkouts: Int,
+        val last7Days: Int,
+        val last30Days: Int,
+        val previousWorkoutTime: Date?)
+
+data class PreviousWorkoutSnapshot(val description: String?)
+
+data class ExerciseSetsSnapshot(val exerciseId: String, val reps: List<Int>)
+
+data class MissedExerciseSnapshot(val title: String, val categoryTitle: String?, val sectionTitle: String?)
+
+data class RoutineProgressSnapshot(
+        val numberOfExercises: Int,
+        val numberOfCompletedExercises: Int,
+        val completionRate: CompletionRate,
+        val categories: List<CategoryProgressSnapshot>,
+        val missedExercises: List<MissedExerciseSnapshot>)
+
+/**
+ * Runs queries on a dedicated database thread and delivers detached snapshots on the main thread,
+ * so presenters never touch Realm while the user navigates.
+ */
+object RepositoryReader {
+    private val thread: HandlerThread by lazy {
+        HandlerThread("RepositoryReader").apply {
+            start()
+        }
+    }
+
+    val scheduler: Scheduler by lazy {
+        AndroidSchedulers.from(thread.looper)
+    }
+
+    /**
+     * The Realm is opened for each read and closed after it, so every read sees the latest commit.
+     */
+    fun <T> read(query: (Realm) -> T): Observable<T> {
+        return Observable.fromCallable { Repository.withRealm(query) }
+                .subscribeOn(scheduler)
+                .observeOn(AndroidSchedulers.mainThread())
+    }
+
+    fun routinesForDay(dayKey: Int): Observable<List<RoutineSnapshot>> {
+        return read {
+            it.where(RepositoryRoutine::class.java)
+                    .equalTo("dayKey", dayKey)
+                    .findAllSorted("startTime", Sort.ASCENDING)
+                    .map { toSnapshot(it) }
+        }
+    }
+
+    fun todaysProgress(routineId: String): Observable<TodaysProgressSnapshot> {
+        return read {
+            val repositoryRoutine = it.where(RepositoryRoutine::class.java)
+                    .equalTo("dayKey", DateTime().toDayKey())
+                    .equalTo("routineId", routineId)
+                    .findFirst()
+
+            if (repositoryRoutine == null) {
+                TodaysProgressSnapshot(null, 0, emptyList())
+            } else {
+                val summary = Repository.getDailySummary(repositoryRoutine)
+
+                TodaysProgressSnapshot(repositoryRoutine.id,
+                        summary?.completionRate ?: RepositoryRoutine.getCompletionRate(repositoryRoutine).percentage,
+                        categoryProgress(repositoryRoutine, summary))
+            }
+        }
+    }
+
+    fun workoutStatistics(): Observable<WorkoutStatisticsSnapshot> {
+        return read {
+            val today = DateTime().toDayKey()
+
+            val previousWorkout = it.where(RepositoryRoutine::class.java)
+                    .lessThan("dayKey", today)
+                    .findAllSorted("startTime", Sort.DESCENDING)
+                    .firstOrNull()
+
+            WorkoutStatisticsSnapshot(
+                    totalWorkouts = it.where(RepositoryRoutine::class.java).count().toInt(),
+                    last7Days = countWorkouts(it, today, 7),
+                    last30Days = countWorkouts(it, today, 30),
+                    previousWorkoutTime = previousWorkout?.startTime)
+        }
+    }
+
+    /**
+     * Emits nothing when no workout was logged before the given one.
+     */
+    fun previousWorkout(repositoryRoutineId: String, startTime: Date, exerciseId: String): Observable<PreviousWorkoutSnapshot> {
+        return read {
+            it.where(RepositoryRoutine::class.java)
+                    .lessThan("startTime", startTime)
+                    .notEqualTo("id", repositoryRoutineId)
+                    .findAllSorted("startTime", Sort.DESCENDING)
+                    .firstOrNull()?.let {
+                PreviousWorkoutSnapshot(RepositoryRoutine.findExercise(it, exerciseId)?.let {
+                    LogWorkoutPresenter().getPreviousWorkoutDescription(it)
+                })
+            }
+        }.filter { it != null }.map { it!! }
+    }
+
+    /**
+     * Reps of the sets logged today for the exercise, empty when nothing was logged.
+     */
+    fun todaysSets(routineId: String, exerciseId: String): Observable<ExerciseSetsSnapshot> {
+        return read {
+            val repositoryRoutine = it.where(RepositoryRoutine::class.java)
+                    .equalTo("dayKey", DateTime().toDayKey())
+                    .equalTo("routineId", routineId)
+                    .findFirst()
+
+            val reps = repositoryRoutine?.let { RepositoryRoutine.findExercise(it, exerciseId) }?.sets?.map { it.reps }
+
+            ExerciseSetsSnapshot(exerciseId, reps ?: emptyList())
+        }
+    }
+
+    /**
+     * Emits nothing when the workout was deleted.
+     */
+    fun routineProgress(repositoryRoutineId: String): Observable<RoutineProgressSnapshot> {
+        return read {
+            it.where(RepositoryRoutine::class.java)
+                    .equalTo("id", repositoryRoutineId)
+                    .findFirst()?.let {
+                val summary = Repository.getDailySummary(it)
+                val exercises = RepositoryRoutine.getVisibleAndCompletedExercises(it.exercises)
+
+                RoutineProgressSnapshot(
+                        numberOfExercises = summary?.numberOfExercises ?: RepositoryRoutine.getNumberOfExercises(exercises),
+                        numberOfCompletedExercises = summary?.numberOfCompletedExercises ?: RepositoryRoutine.getNumberOfCompletedExercises(exercises),
+                        completionRate = summary?.let { RepositoryDailySummary.getCompletionRate(it) } ?: RepositoryRoutine.getCompletionRate(it),
+                        categories = categoryProgress(it, summary),
+                        missedExercises = RepositoryRoutine.getMissedExercises(it.exercises).map {
+                            MissedExerciseSnapshot(it.title, it.category?.title, it.section?.title)
+                        })
+            }
+        }.filter { it != null }.map { it!! }
+    }
+
+    private fun countWorkouts(realm: Realm, today: Int, days: Int): Int {
+        return realm.where(RepositoryRoutine::class.java)
+                .between("dayKey", today - days + 1, today)
+                .count()
+                .toInt()
+    }
+
+    private fun categoryProgress(repositoryRoutine: RepositoryRoutine, summary: RepositoryDailySummary?): List<CategoryProgressSnapshot> {
+        if (summary == null) {
+            return repositoryRoutine.categories.map {
+                CategoryProgressSnapshot(it.title, RepositoryCategory.getCompletionRate(it))
+            }
+        }
+
+        return summary.categories.map {
+            CategoryProgressSnapshot(it.title, RepositoryCategorySummary.getCompletionRate(it))
+        }
+    }
+
+    private fun toSnapshot(repositoryRoutine: RepositoryRoutine): RoutineSnapshot {
+        val summary = Repository.getDailySummary(repositoryRoutine)
+
+        return RoutineSnapshot(
+                id = repositoryRoutine.id,
+                title = repositoryRoutine.title,
+                subtitle = repositoryRoutine.subtitle,
+                startTime = repositoryRoutine.startTime,
+                dayKey = repositoryRoutine.dayKey,
+                completionRate = summary?.let { RepositoryDailySummary.getCompletionRate(it) } ?: RepositoryRoutine.getCompletionRate(repositoryRoutine))
+    }
+}
@@ -0,0 +1,344 @@
+package com.bodyweight.fitness.repository
+
+import com.bodyweight.fitness.model.*
+
+import io.realm.Realm
+import io.realm.RealmList
+import io.realm.RealmModel
+
+enum class RoutineNode { Category, Section, Exercise }
+
+enum class RoutineEditType { Add, Remove, Move, Update }
+
+/**
+ * One change to a stored workout, the id is the categoryId, sectionId or exerciseId of the node.
+ */
+data class RoutineEdit(val type: RoutineEditType, val node: RoutineNode, val id: String)
+
+/**
+ * Compares a routine with a workout stored from an older version of it and updates the workout in place,
+ * so only the categories, sections and exercises that changed are written.
+ */
+object RoutineDiff {
+    /**
+     * Exercises that are no longer in the routine are only removed when nothing was logged for them,
+     * sections and categories only when none of their exercises are kept.
+     */
+    fun diff(routine: Routine, repositoryRoutine: RepositoryRoutine): List<RoutineEdit> {
+        val edits = ArrayList<RoutineEdit>()
+
+        val categories = repositoryRoutine.categories.associateBy { it.categoryId }
+        val sections = repositoryRoutine.sections.associateBy { it.sectionId }
+        val exercises = repositoryRoutine.exercises.associateBy { it.exerciseId }
+
+        val keptExercises = repositoryRoutine.exercises.filter {
+            routine.getExercise(it.exerciseId) != null || it.sets.isNotEmpty()
+        }
+
+        val keptExerciseIds = keptExercises.mapTo(HashSet()) { it.exerciseId }
+
+        /**
+         * An exercise still in the routine keeps the parents it moves to, only one kept for its logged sets
+         * keeps the parents it is stored under.
+         */
+        val keptSections = keptExercises.mapNotNullTo(HashSet()) {
+            val exercise = routine.getExercise(it.exerciseId)
+
+            if (exercise != null) exercise.section?.sectionId else it.section?.sectionId
+        }
+
+        val keptCategories = keptExercises.mapNotNullTo(HashSet()) {
+            val exercise = routine.getExercise(it.exerciseId)
+
+            if (exercise != null) exercise.category?.categoryId else it.category?.categoryId
+        }
+
+        val movedCategories = movedIds(routine.categories.map { it.categoryId }, repositoryRoutine.categories.map { it.categoryId })
+
+        for (category in routine.categories) {
+            val repositoryCategory = categories[category.categoryId]
+
+            if (repositoryCategory == null) {
+                edits.add(RoutineEdit(RoutineEditType.Add, RoutineNode.Category, category.categoryId))
+            } else {
+                if (movedCategories.contains(category.categoryId)) {
+                    edits.add(RoutineEdit(RoutineEditType.Move, RoutineNode.Category, category.categoryId))
+                }
+
+                if (repositoryCategory.title != category.title) {
+                    edits.add(RoutineEdit(RoutineEditType.Update, RoutineNode.Category, category.categoryId))
+                }
+            }
+        }
+
+        val movedSections = movedIds(routine.sections.map { it.sectionId }, repositoryRoutine.sections.map { it.sectionId })
+
+        for (section in routine.sections) {
+            val repositorySection = sections[section.sectionId]
+
+            if (repositorySection == null) {
+                edits.add(RoutineEdit(RoutineEditType.Add, RoutineNode.Section, section.sectionId))
+            } else {
+                if (movedSections.contains(section.sectionId) || repositorySection.category?.categoryId != section.category?.categoryId) {
+                    edits.add(RoutineEdit(RoutineEditType.Move, RoutineNode.Section, section.sectionId))
+                }
+
+                if (repositorySection.title != section.title || repositorySection.mode != section.sectionMode.toString()) {
+                    edits.add(RoutineEdit(RoutineEditType.Update, RoutineNode.Section, section.sectionId))
+                }
+            }
+        }
+
+        val movedExercises = movedIds(routine.exercises.map { it.exerciseId }, repositoryRoutine.exercises.map { it.exerciseId })
+
+        for (exercise in routine.exercises) {
+            val repositoryExercise = exercises[exercise.exerciseId]
+
+            if (repositoryExercise == null) {
+                edits.add(RoutineEdit(RoutineEditType.Add, RoutineNode.Exercise, exercise.exerciseId))
+            } else {
+                if (movedExercises.contains(exercise.exerciseId)
+                        || repositoryExercise.section?.sectionId != exercise.section?.sectionId
+                        || repositoryExercise.category?.categoryId != exercise.category?.categoryId) {
+                    edits.add(RoutineEdit(RoutineEditType.Move, RoutineNode.Exercise, exercise.exerciseId))
+                }
+
+                if (repositoryExercise.title != exercise.title
+                        || repositoryExercise.description != exercise.description
+                        || repositoryExercise.defaultSet != exercise.defaultSet) {
+                    edits.add(RoutineEdit(RoutineEditType.Update, RoutineNode.Exercise, exercise.exerciseId))
+                }
+            }
+        }
+
+        for (repositoryExercise in repositoryRoutine.exercises) {
+            if (!keptExerciseIds.contains(repositoryExercise.exerciseId)) {
+                edits.add(RoutineEdit(RoutineEditType.Remove, RoutineNode.Exercise, repositoryExercise.exerciseId))
+            }
+        }
+
+        for (repositorySection in repositoryRoutine.sections) {
+            if (routine.getSection(repositorySection.sectionId) == null && !keptSections.contains(repositorySection.sectionId)) {
+                edits.add(RoutineEdit(RoutineEditType.Remove, RoutineNode.Section, repositorySection.sectionId))
+            }
+        }
+
+        for (repositoryCategory in repositoryRoutine.categories) {
+            if (routine.getCategory(repositoryCategory.categoryId) == null && !keptCategories.contains(repositoryCategory.categoryId)) {
+                edits.add(RoutineEdit(RoutineEditType.Remove, RoutineNode.Category, repositoryCategory.categoryId))
+            }
+        }
+
+        return edits
+    }
+
+    /**
+     * Applies the edits returned by diff, must be called inside a transaction.
+     * The routine title, fingerprint and daily summary are left to the caller.
+     */
+    fun apply(realm: Realm, routine: Routine, repositoryRoutine: RepositoryRoutine, edits: List<RoutineEdit>) {
+        val categories = repositoryRoutine.categories.associateByTo(HashMap()) { it.categoryId }
+        val sections = repositoryRoutine.sections.associateByTo(HashMap()) { it.sectionId }
+        val exercises = repositoryRoutine.exercises.associateByTo(HashMap()) { it.exerciseId }
+
+        for (edit in edits.filter { it.type == RoutineEditType.Remove }.sortedByDescending { it.node }) {
+            when (edit.node) {
+                RoutineNode.Exercise -> exercises.remove(edit.id)?.let {
+                    repositoryRoutine.exercises.remove(it)
+                    it.category?.exercises?.remove(it)
+                    it.section?.exercises?.remove(it)
+
+                    if (it.isManaged) {
+                        it.sets.deleteAllFromRealm()
+                        it.deleteFromRealm()
+                    }
+                }
+                RoutineNode.Section -> sections.remove(edit.id)?.let {
+                    repositoryRoutine.sections.remove(it)
+                    it.category?.sections?.remove(it)
+
+                    if (it.isManaged) {
+                        it.deleteFromRealm()
+                    }
+                }
+                RoutineNode.Category -> categories.remove(edit.id)?.let {
+                    repositoryRoutine.categories.remove(it)
+
+                    if (it.isManaged) {
+                        it.deleteFromRealm()
+                    }
+                }
+            }
+        }
+
+        for (edit in edits.filter { it.type != RoutineEditType.Remove }) {
+            when (edit.node) {
+                RoutineNode.Category -> {
+                    val category = routine.getCategory(edit.id)!!
+
+                    val repositoryCategory = categories.getOrPut(edit.id) {
+                        RepositorySequence.createObject(realm, RepositoryCategory::class.java).apply {
+                            categoryId = category.categoryId
+                            this.routine = repositoryRoutine
+
+                            repositoryRoutine.categories.add(this)
+                        }
+                    }
+
+                    repositoryCategory.title = category.title
+                }
+
+                RoutineNode.Section -> {
+                    val section = routine.getSection(edit.id)!!
+                    val repositoryCategory = categories[section.category!!.categoryId]!!
+
+                    val repositorySection = sections.getOrPut(edit.id) {
+                        RepositorySequence.createObject(realm, RepositorySection::class.java).apply {
+                            sectionId = section.sectionId
+                            this.routine = repositoryRoutine
+
+                            repositoryRoutine.sections.add(this)
+                        }
+                    }
+
+                    if (repositorySection.category != repositoryCategory) {
+                        repositorySection.category?.sections?.remove(repositorySection)
+                        repositorySection.category = repositoryCategory
+
+                        repositoryCategory.sections.add(repositorySection)
+                    }
+
+                    repositorySection.title = section.title
+                    repositorySection.mode = section.sectionMode.toString()
+                }
+
+                RoutineNode.Exercise -> {
+                    val exercise = routine.getExercise(edit.id)!!
+                    val repositoryCategory = categories[exercise.category!!.categoryId]!!
+                    val repositorySection = sections[exercise.section!!.sectionId]!!
+
+                    val repositoryExercise = exercises.getOrPut(edit.id) {
+                        RepositorySequence.createObject(realm, RepositoryExercise::class.java).apply {
+                            exerciseId = exercise.exerciseId
+                            this.routine = repositoryRoutine
+                            visible = isVisible(exercise)
+
+                            repositoryRoutine.exercises.add(this)
+                        }
+                    }
+
+                    if (repositoryExercise.category != repositoryCategory) {
+                        repositoryExercise.category?.exercises?.remove(repositoryExercise)
+                        repositoryExercise.category = repositoryCategory
+
+                        repositoryCategory.exercises.add(repositoryExercise)
+                    }
+
+                    if (repositoryExercise.section != repositorySection) {
+                        repositoryExercise.section?.exercises?.remove(repositoryExercise)
+                        repositoryExercise.section = repositorySection
+
+                        repositorySection.exercises.add(repositoryExercise)
+                    }
+
+                    repositoryExercise.title = exercise.title
+                    repositoryExercise.description = exercise.description
+                    repositoryExercise.defaultSet = exercise.defaultSet
+
+                    if (edit.type == RoutineEditType.Update) {
+                        RepositorySetHistory.update(realm, repositoryExercise)
+                    }
+                }
+            }
+        }
+
+        if (edits.any { it.type == RoutineEditType.Add || it.type == RoutineEditType.Move }) {
+            val categoryRanks = routine.categories.withIndex().associate { it.value.categoryId to it.index }
+            val sectionRanks = routine.sections.withIndex().associate { it.value.sectionId to it.index }
+            val exerciseRanks = routine.exercises.withIndex().associate { it.value.exerciseId to it.index }
+
+            reorder(repositoryRoutine.categories) { categoryRanks[it.categoryId] }
+            reorder(repositoryRoutine.sections) { sectionRanks[it.sectionId] }
+            reorder(repositoryRoutine.exercises) { exerciseRanks[it.exerciseId] }
+
+            for (repositoryCategory in repositoryRoutine.categories) {
+                reorder(repositoryCategory.sections) { sectionRanks[it.sectionId] }
+                reorder(repositoryCategory.exercises) { exerciseRanks[it.exerciseId] }
+            }
+
+            for (repositorySection in repositoryRoutine.sections) {
+                reorder(repositorySection.exercises) { exerciseRanks[it.exerciseId] }
+            }
+        }
+    }
+
+    /**
+     * Returns the ids found in both lists that are out of order, keeping the longest run that already
+     * is in order in place so the fewest nodes move.
+     */
+    fun movedIds(routineIds: List<String>, storedIds: List<String>): Set<String> {
+        val storedPositions = storedIds.withIndex().associate { it.value to it.index }
+
+        val common = routineIds.filter { storedPositions.containsKey(it) }
+        val positions = common.map { storedPositions[it]!! }
+
+        val tails = IntArray(positions.size)
+        val previous = IntArray(positions.size)
+        var length = 0
+
+        for (index in positions.indices) {
+            var low = 0
+            var high = length
+
+            while (low < high) {
+                val middle = (low + high) ushr 1
+
+                if (positions[tails[middle]] < positions[index]) {
+                    low = middle + 1
+                } else {
+                    high = middle
+                }
+            }
+
+            previous[index] = if (low > 0) tails[low - 1] else -1
+            tails[low] = index
+
+            if (low == length) {
+                length++
+            }
+        }
+
+        val inOrder = HashSet<Int>()
+        var index = if (length > 0) tails[length - 1] else -1
+
+        while (index >= 0) {
+            inOrder.add(index)
+            index = previous[index]
+        }
+
+        return common.filterIndexedTo(HashSet()) { position, _ -> !inOrder.contains(position) }
+    }
+
+    /**
+     * Moves only the misplaced objects, the ones no longer in the routine go last.
+     */
+    private fun <T : RealmModel> reorder(list: RealmList<T>, rank: (T) -> Int?) {
+        val target = list.sortedBy { rank(it) ?: Int.MAX_VALUE }
+
+        for (index in target.indices) {
+            if (list[index] != target[index]) {
+                list.move(list.indexOf(target[index]), index)
+            }
+        }
+    }
+
+    private fun isVisible(exercise: Exercise): Boolean {
+        val section = exercise.section!!
+
+        if (section.sectionMode == SectionMode.Levels || section.sectionMode == SectionMode.Pick) {
+            return exercise == section.currentExercise
+        }
+
+        return true
+    }
+}
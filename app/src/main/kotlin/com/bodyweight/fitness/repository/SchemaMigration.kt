@@ -1,59 +1,47 @@
 package com.bodyweight.fitness.repository
 
+import com.bodyweight.fitness.BuildConfig
 import com.bodyweight.fitness.model.Routine
+import com.bodyweight.fitness.model.RepositoryDailySummary
 import com.bodyweight.fitness.model.RepositoryRoutine
 import com.bodyweight.fitness.stream.RoutineStream
+import com.bodyweight.fitness.utils.Preferences
 
 class SchemaMigration {
+    /**
+     * Bundled routines only change with an app update, so each routine is checked once per app version.
+     */
     fun migrateSchemaIfNeeded() {
-        if (Repository.repositoryRoutineForTodayExists()) {
-            val routine = RoutineStream.routine
-            val currentSchema = Repository.repositoryRoutineForToday
+        val routine = RoutineStream.routine
 
-            migrateSchemaIfNeeded(routine, currentSchema)
+        if (Preferences.getSchemaCheckedVersion(routine.routineId) == BuildConfig.VERSION_CODE) {
+            return
         }
-    }
-
-    private fun migrateSchemaIfNeeded(routine: Routine, currentSchema: RepositoryRoutine) {
-        if (!(isValidSchema(routine, currentSchema))) {
-            val newSchema = Repository.buildRealmRoutine(routine)
-
-            val realm = Repository.realm
-
-            realm.executeTransaction {
-                newSchema.startTime = currentSchema.startTime
-                newSchema.lastUpdatedTime = currentSchema.lastUpdatedTime
-
-                for (exercise in newSchema.exercises) {
-                    val currentExercise = currentSchema.exercises.filter {
-                        it.exerciseId == exercise.exerciseId
-                    }.firstOrNull()
-
-                    if (currentExercise != null) {
-                        exercise.sets.removeAll { true }
 
-                        for (set in currentExercise.sets) {
-                            exercise.sets.add(set)
-                        }
-                    }
-                }
-
-                currentSchema.deleteFromRealm()
-
-                realm.copyToRealmOrUpdate(newSchema)
+        Repository.findRepositoryRoutineForToday()?.let {
+            if (it.fingerprint != routine.fingerprint) {
+                migrateSchemaIfNeeded(routine, it)
             }
         }
+
+        Preferences.setSchemaCheckedVersion(routine.routineId, BuildConfig.VERSION_CODE)
     }
 
-    private fun isValidSchema(routine: Routine, currentSchema: RepositoryRoutine): Boolean {
-        for (exercise in routine.exercises) {
-            val contains = currentSchema.exercises.filter {
-                it.exerciseId == exercise.exerciseId
-            }.firstOrNull()
+    /**
+     * Today's workout is updated in place, so logged sets stay with their exercises.
+     */
+    private fun migrateSchemaIfNeeded(routine: Routine, currentSchema: RepositoryRoutine) {
+        val edits = RoutineDiff.diff(routine, currentSchema)
 
-            contains ?: return false
-        }
+        Repository.realm.executeTransaction {
+            if (edits.isNotEmpty()) {
+                RoutineDiff.apply(it, routine, currentSchema, edits)
+                RepositoryDailySummary.update(it, currentSchema)
+            }
 
-        return true
+            currentSchema.title = routine.title
+            currentSchema.subtitle = routine.subtitle
+            currentSchema.fingerprint = routine.fingerprint
+        }
     }
-}
\ No newline at end of file
+}
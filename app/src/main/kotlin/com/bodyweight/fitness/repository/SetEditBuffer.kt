@@ -0,0 +1,178 @@
+package com.bodyweight.fitness.repository
+
+import android.os.Handler
+import android.os.Looper
+
+import com.bodyweight.fitness.App
+import com.bodyweight.fitness.extension.debug
+import com.bodyweight.fitness.model.RepositoryDailySummary
+import com.bodyweight.fitness.model.RepositorySet
+import com.bodyweight.fitness.model.RepositorySetHistory
+
+import io.realm.Realm
+
+import rx.schedulers.Schedulers
+
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+class SetEdit(val id: Long, val isTimed: Boolean, var reps: Int, var weight: Double, var seconds: Int) {
+    constructor(set: RepositorySet) : this(set.id, set.isTimed, set.reps, set.weight, set.seconds)
+
+    /**
+     * Copies the edited values onto the stored set, must be called inside a transaction.
+     */
+    fun applyTo(realm: Realm): RepositorySet? {
+        val set = realm.where(RepositorySet::class.java).equalTo("id", id).findFirst() ?: return null
+
+        set.reps = reps
+        set.weight = weight
+        set.seconds = seconds
+
+        return set
+    }
+
+    companion object {
+        fun encode(edits: Collection<SetEdit>): String {
+            return edits.joinToString(";") { "${it.id},${it.isTimed},${it.reps},${it.weight},${it.seconds}" }
+        }
+
+        fun decode(journal: String): List<SetEdit> {
+            return journal.split(";").filter { it.isNotEmpty() }.mapNotNull {
+                val values = it.split(",")
+
+                try {
+                    SetEdit(values[0].toLong(), values[1].toBoolean(), values[2].toInt(), values[3].toDouble(), values[4].toInt())
+                } catch (e: Exception) {
+                    null
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Edits appended to a small file as they are made, replaying them in order leaves the last value of each set.
+ * An edit costs a few appended bytes on a background thread instead of encoding every pending edit again.
+ */
+object SetEditJournal {
+    private val worker = Schedulers.io().createWorker()
+
+    private val file by lazy {
+        File(App.context!!.filesDir, "set_edit_journal")
+    }
+
+    fun append(edit: SetEdit) {
+        val bytes = (SetEdit.encode(listOf(edit)) + ";").toByteArray()
+
+        worker.schedule {
+            try {
+                FileOutputStream(file, true).use { it.write(bytes) }
+            } catch (e: IOException) {
+                debug("Unable to journal set edit: ${e.message}")
+            }
+        }
+    }
+
+    fun clear() {
+        worker.schedule {
+            file.delete()
+        }
+    }
+
+    /**
+     * Reads the journal on the calling thread, used on start before anything is appended.
+     */
+    fun read(): List<SetEdit> {
+        if (!file.exists()) {
+            return emptyList()
+        }
+
+        try {
+            return SetEdit.decode(file.readText())
+        } catch (e: IOException) {
+            return emptyList()
+        }
+    }
+}
+
+/**
+ * Holds the set values edited in the log workout dialog and writes them in one transaction once the
+ * buttons settle, instead of committing every repeated click. Pending edits are journaled so an edit
+ * made just before the process dies is replayed on the next start.
+ */
+class SetEditBuffer(private val onFlush: (SetEditBuffer) -> Unit) {
+    private val debounceMillis = 1000L
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val edits = LinkedHashMap<Long, SetEdit>()
+    private val flushRunnable = Runnable { flush() }
+
+    /**
+     * Returns the pending edit of the set, or a new one holding its stored values.
+     */
+    fun edit(set: RepositorySet): SetEdit {
+        return edits[set.id] ?: SetEdit(set)
+    }
+
+    fun put(edit: SetEdit) {
+        edits.put(edit.id, edit)
+
+        SetEditJournal.append(edit)
+
+        handler.removeCallbacks(flushRunnable)
+        handler.postDelayed(flushRunnable, debounceMillis)
+    }
+
+    fun flush() {
+        handler.removeCallbacks(flushRunnable)
+
+        if (edits.isEmpty()) {
+            return
+        }
+
+        onFlush(this)
+
+        edits.clear()
+
+        SetEditJournal.clear()
+    }
+
+    /**
+     * Copies every pending edit onto the stored sets, must be called inside a transaction.
+     */
+    fun applyTo(realm: Realm) {
+        for (edit in edits.values) {
+            edit.applyTo(realm)
+        }
+    }
+
+    companion object {
+        /**
+         * Writes the edits left in the journal by a process that died before flushing them.
+         * Opens the file, so it runs on a background thread before the routine is reported ready.
+         */
+        fun replayJournal() {
+            val edits = SetEditJournal.read()
+
+            if (edits.isNotEmpty()) {
+                Repository.withRealm {
+                    it.executeTransaction { realm ->
+                        for (edit in edits) {
+                            edit.applyTo(realm)?.exercise?.let {
+                                RepositorySetHistory.update(realm, it)
+
+                                it.routine?.let {
+                                    RepositoryDailySummary.update(realm, it)
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            SetEditJournal.clear()
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.bodyweight.fitness.repository
+
+import com.bodyweight.fitness.model.RepositoryRoutine
+import com.bodyweight.fitness.utils.Preferences
+
+import io.realm.Sort
+
+import rx.Observable
+import rx.schedulers.Schedulers
+
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+
+data class ExportProgress(val exported: Int, val total: Int, val file: File) {
+    val isCompleted: Boolean
+        get() = exported == total
+}
+
+object WorkoutLogExport {
+    private val chunkSize = 50
+
+    /**
+     * Temporary files of the exports running in this process, any other one was left by a process that died.
+     */
+    private val temporaryFiles = HashSet<File>()
+
+    /**
+     * Streams every logged workout into the file from the io scheduler, emitting progress after each chunk.
+     * Each export writes its own temporary file next to the target and only replaces the target once it
+     * is complete, so an export cancelled by a newer one never touches the file the newer one writes.
+     * Unsubscribing stops the export before the next chunk and deletes its temporary file.
+     * Temporary files left by a process that died mid-export are deleted when the next export starts.
+     */
+    fun export(file: File): Observable<ExportProgress> {
+        return Observable.create<ExportProgress> { subscriber ->
+            file.parentFile.mkdirs()
+
+            var temporaryFile: File? = null
+
+            try {
+                val output = synchronized(temporaryFiles) {
+                    deleteStaleFiles(file.parentFile)
+
+                    File.createTempFile(file.nameWithoutExtension, ".tmp", file.parentFile).also {
+                        temporaryFiles.add(it)
+                    }
+                }
+
+                temporaryFile = output
+
+                Repository.withRealm {
+                    val results = it.where(RepositoryRoutine::class.java)
+                            .findAllSorted("startTime", Sort.DESCENDING)
+
+                    val total = results.size
+                    val weightUnit = Preferences.weightMeasurementUnit.toString()
+
+                    BufferedWriter(OutputStreamWriter(FileOutputStream(output), Charsets.UTF_8)).use { writer ->
+                        writer.write(RepositoryRoutine.csvHeader)
+
+                        var index = 0
+
+                        while (index < total && !subscriber.isUnsubscribed) {
+                            val end = Math.min(index + chunkSize, total)
+
+                            for (position in index until end) {
+                                RepositoryRoutine.writeCSV(results[position], writer, weightUnit)
+                            }
+
+                            index = end
+
+                            writer.flush()
+
+                            subscriber.onNext(ExportProgress(index, total, file))
+                        }
+
+                        if (total == 0) {
+                            subscriber.onNext(ExportProgress(0, 0, file))
+                        }
+                    }
+                }
+
+                if (subscriber.isUnsubscribed) {
+                    output.delete()
+                } else if (!output.renameTo(file)) {
+                    throw IOException("Unable to replace ${file.name}")
+                } else {
+                    subscriber.onCompleted()
+                }
+            } catch (e: Exception) {
+                temporaryFile?.delete()
+
+                subscriber.onError(e)
+            } finally {
+                synchronized(temporaryFiles) {
+                    temporaryFile?.let { temporaryFiles.remove(it) }
+                }
+            }
+        }.subscribeOn(Schedulers.io())
+    }
+
+    private fun deleteStaleFiles(directory: File) {
+        directory.listFiles { file -> file.extension == "tmp" && !temporaryFiles.contains(file) }?.forEach {
+            it.delete()
+        }
+    }
+}
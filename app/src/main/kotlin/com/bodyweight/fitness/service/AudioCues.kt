@@ -0,0 +1,88 @@
+package com.bodyweight.fitness.service
+
+import android.content.Context
+import android.media.AudioAttributes
+import android.media.AudioManager
+import android.media.SoundPool
+import android.os.Handler
+import android.os.Looper
+
+import com.bodyweight.fitness.R
+
+/**
+ * The duration is the length of the file, SoundPool does not report when a sound ends.
+ */
+enum class AudioCue(val resource: Int, val durationMillis: Long) {
+    Finished(R.raw.finished, 2750)
+}
+
+/**
+ * Short sounds decoded once into a SoundPool, so playing one has no decode latency and leaks no player.
+ * A cue asks for transient audio focus that lets other apps duck, music keeps playing underneath it.
+ * Must be used from the main thread.
+ */
+object AudioCues {
+    private val handler = Handler(Looper.getMainLooper())
+    private val abandonFocusRunnable = Runnable { abandonFocus() }
+    private val focusListener = AudioManager.OnAudioFocusChangeListener { }
+
+    private var soundPool: SoundPool? = null
+    private var audioManager: AudioManager? = null
+
+    private val soundIds = HashMap<AudioCue, Int>()
+
+    /**
+     * SoundPool decodes the cues on its own thread, does nothing when they are already loaded.
+     */
+    fun load(context: Context) {
+        if (soundPool != null) {
+            return
+        }
+
+        val applicationContext = context.applicationContext
+
+        audioManager = applicationContext.getSystemService(Context.AUDIO_SERVICE) as AudioManager
+
+        soundPool = SoundPool.Builder()
+                .setMaxStreams(2)
+                .setAudioAttributes(AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build()
+                .also { soundPool ->
+                    for (cue in AudioCue.values()) {
+                        soundIds.put(cue, soundPool.load(applicationContext, cue.resource, 1))
+                    }
+                }
+    }
+
+    fun play(context: Context, cue: AudioCue) {
+        load(context)
+
+        val soundId = soundIds[cue] ?: return
+
+        @Suppress("DEPRECATION")
+        audioManager?.requestAudioFocus(focusListener, AudioManager.STREAM_NOTIFICATION, AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK)
+
+        soundPool?.play(soundId, 1f, 1f, 1, 0, 1f)
+
+        handler.removeCallbacks(abandonFocusRunnable)
+        handler.postDelayed(abandonFocusRunnable, cue.durationMillis)
+    }
+
+    fun release() {
+        handler.removeCallbacks(abandonFocusRunnable)
+        abandonFocus()
+
+        soundPool?.release()
+        soundPool = null
+
+        soundIds.clear()
+    }
+
+    private fun abandonFocus() {
+        @Suppress("DEPRECATION")
+        audioManager?.abandonAudioFocus(focusListener)
+    }
+}
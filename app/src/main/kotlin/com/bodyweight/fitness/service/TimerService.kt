@@ -0,0 +1,178 @@
+package com.bodyweight.fitness.service
+
+import android.app.AlarmManager
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.PendingIntent
+import android.app.Service
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import android.os.Handler
+import android.os.IBinder
+import android.os.Looper
+import android.support.v4.app.NotificationCompat
+import android.support.v4.content.ContextCompat
+
+import com.bodyweight.fitness.R
+import com.bodyweight.fitness.formatMinutes
+import com.bodyweight.fitness.formatSeconds
+import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.stream.CountdownTimer
+import com.bodyweight.fitness.stream.TimerEngine
+import com.bodyweight.fitness.stream.TimerState
+import com.bodyweight.fitness.ui.WorkoutActivity
+import com.bodyweight.fitness.utils.Preferences
+
+import rx.Observable
+import rx.Subscription
+
+/**
+ * Keeps the process in the foreground while a countdown runs and shows it in a notification.
+ * The countdowns only wake up for the seconds shown while the device is awake, an exact alarm at the
+ * nearest deadline wakes the device to finish it, so no wakelock is held in between.
+ * Finishing a countdown is handled here rather than in the views, which may not be bound.
+ */
+class TimerService : Service() {
+    companion object {
+        private val notificationId = 1
+        private val channelId = "timer"
+
+        fun start(context: Context) {
+            ContextCompat.startForegroundService(context, Intent(context, TimerService::class.java))
+        }
+    }
+
+    private val handler = Handler(Looper.getMainLooper())
+
+    private var subscription: Subscription? = null
+    private var alarmAt: Long? = null
+
+    private val alarmManager by lazy {
+        getSystemService(Context.ALARM_SERVICE) as AlarmManager
+    }
+
+    private val notificationManager by lazy {
+        getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
+    }
+
+    private val alarmIntent by lazy {
+        PendingIntent.getBroadcast(this, 0, Intent(this, TimerAlarmReceiver::class.java), 0)
+    }
+
+    override fun onCreate() {
+        super.onCreate()
+
+        Repository.acquire()
+        AudioCues.load(this)
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notificationManager.createNotificationChannel(NotificationChannel(
+                    channelId, getString(R.string.timer_notification_channel), NotificationManager.IMPORTANCE_LOW))
+        }
+
+        subscription = Observable.combineLatest(
+                TimerEngine.exerciseTimer.observable,
+                TimerEngine.restTimer.observable) { exercise, rest -> Pair(exercise, rest) }
+                .subscribe { (exercise, rest) ->
+                    when {
+                        exercise.isFinished -> onFinished(TimerEngine.exerciseTimer) { TimerEngine.onExerciseFinished() }
+                        rest.isFinished -> onFinished(TimerEngine.restTimer) { TimerEngine.onRestFinished() }
+                        else -> update(exercise, rest)
+                    }
+                }
+    }
+
+    override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
+        startForeground(notificationId, buildNotification(TimerEngine.exerciseTimer.state, TimerEngine.restTimer.state))
+
+        update(TimerEngine.exerciseTimer.state, TimerEngine.restTimer.state)
+
+        return START_NOT_STICKY
+    }
+
+    override fun onDestroy() {
+        subscription?.unsubscribe()
+
+        handler.removeCallbacksAndMessages(null)
+
+        alarmManager.cancel(alarmIntent)
+
+        Repository.release()
+
+        super.onDestroy()
+    }
+
+    override fun onBind(intent: Intent?): IBinder? = null
+
+    /**
+     * Resetting the countdown from inside its own emission would reach later subscribers before the finished
+     * state does, so it is posted to run once every subscriber has seen the countdown finish.
+     */
+    private fun onFinished(timer: CountdownTimer, action: () -> Unit) {
+        handler.post {
+            if (timer.state.isFinished) {
+                action()
+
+                playSound()
+            }
+        }
+    }
+
+    private fun update(exercise: TimerState, rest: TimerState) {
+        if (!exercise.isPlaying && !rest.isPlaying) {
+            alarmManager.cancel(alarmIntent)
+            alarmAt = null
+
+            stopForeground(true)
+            stopSelf()
+
+            return
+        }
+
+        val finishesAt = listOfNotNull(TimerEngine.exerciseTimer.finishesAt, TimerEngine.restTimer.finishesAt).min()
+
+        if (finishesAt != alarmAt && finishesAt != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, finishesAt, alarmIntent)
+            } else {
+                alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, finishesAt, alarmIntent)
+            }
+
+            alarmAt = finishesAt
+        }
+
+        notificationManager.notify(notificationId, buildNotification(exercise, rest))
+    }
+
+    /**
+     * The rest countdown is shown while it runs, the exercise countdown otherwise.
+     */
+    private fun buildNotification(exercise: TimerState, rest: TimerState) =
+            NotificationCompat.Builder(this, channelId)
+                    .setSmallIcon(R.drawable.action_workout)
+                    .setContentTitle(getString(if (rest.isPlaying) R.string.timer_notification_rest else R.string.timer_notification_exercise))
+                    .setContentText((if (rest.isPlaying) rest else exercise).seconds.let { "${it.formatMinutes()}:${it.formatSeconds()}" })
+                    .setContentIntent(PendingIntent.getActivity(this, 0, Intent(this, WorkoutActivity::class.java), 0))
+                    .setOnlyAlertOnce(true)
+                    .setShowWhen(false)
+                    .setOngoing(true)
+                    .build()
+
+    private fun playSound() {
+        if (Preferences.playSoundWhenTimerStops()) {
+            AudioCues.play(this, AudioCue.Finished)
+        }
+    }
+}
+
+/**
+ * Runs when the alarm for the nearest deadline goes off, the countdowns finish on their own while awake.
+ */
+class TimerAlarmReceiver : BroadcastReceiver() {
+    override fun onReceive(context: Context, intent: Intent) {
+        TimerEngine.exerciseTimer.refresh()
+        TimerEngine.restTimer.refresh()
+    }
+}
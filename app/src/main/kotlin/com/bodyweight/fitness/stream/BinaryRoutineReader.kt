@@ -0,0 +1,57 @@
+package com.bodyweight.fitness.stream
+
+import com.bodyweight.fitness.model.*
+
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Decodes the routines compiled by the compileRoutines task in app/build.gradle, which documents the layout.
+ */
+object BinaryRoutineReader {
+    private val magic = 0x42574652
+    private val version = 1
+
+    fun read(inputStream: InputStream, routine: Routine = Routine()): Routine {
+        DataInputStream(BufferedInputStream(inputStream)).use {
+            return readRoutine(it, routine)
+        }
+    }
+
+    private fun readRoutine(input: DataInputStream, routine: Routine): Routine {
+        if (input.readInt() != magic || input.readShort().toInt() != version) {
+            throw IOException("Unsupported routine format")
+        }
+
+        val strings = Array(input.readInt()) { input.readUTF() }
+
+        routine.routineId = strings[input.readInt()]
+        routine.title = strings[input.readInt()]
+        routine.subtitle = strings[input.readInt()]
+        routine.shortDescription = strings[input.readInt()]
+        routine.url = strings[input.readInt()]
+
+        for (record in 0 until input.readInt()) {
+            val type = input.readByte().toInt()
+            val mode = input.readByte().toInt()
+
+            val id = strings[input.readInt()]
+            val level = strings[input.readInt()]
+            val title = strings[input.readInt()]
+            val description = strings[input.readInt()]
+            val youTubeId = strings[input.readInt()]
+            val videoId = strings[input.readInt()]
+            val defaultSet = strings[input.readInt()]
+
+            when (type) {
+                0 -> routine.insertCategory(Category(id, title))
+                1 -> routine.insertSection(Section(id, title, description, SectionMode.values()[mode]))
+                else -> routine.insertExercise(Exercise(id, level, title, description, youTubeId, videoId, defaultSet))
+            }
+        }
+
+        return routine
+    }
+}
@@ -0,0 +1,103 @@
+package com.bodyweight.fitness.stream
+
+import com.bodyweight.fitness.model.*
+
+import com.google.gson.stream.JsonReader
+
+import java.io.InputStream
+import java.io.InputStreamReader
+
+/**
+ * Builds the routine graph in a single pass over the json tokens, without reading the file into a string
+ * or reflecting it into JSONRoutine first.
+ */
+object JsonRoutineReader {
+    /**
+     * The routine passed in must be empty, a custom one only changes where saved levels are looked up.
+     */
+    fun read(inputStream: InputStream, routine: Routine = Routine()): Routine {
+        JsonReader(InputStreamReader(inputStream, Charsets.UTF_8)).use {
+            return readRoutine(it, routine)
+        }
+    }
+
+    private fun readRoutine(reader: JsonReader, routine: Routine): Routine {
+        reader.beginObject()
+
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "routineId" -> routine.routineId = reader.nextString()
+                "title" -> routine.title = reader.nextString()
+                "subtitle" -> routine.subtitle = reader.nextString()
+                "shortDescription" -> routine.shortDescription = reader.nextString()
+                "url" -> routine.url = reader.nextString()
+                "routine" -> {
+                    reader.beginArray()
+
+                    while (reader.hasNext()) {
+                        readLinkedRoutine(reader, routine)
+                    }
+
+                    reader.endArray()
+                }
+                else -> reader.skipValue()
+            }
+        }
+
+        reader.endObject()
+
+        return routine
+    }
+
+    /**
+     * Missing fields default to an empty string and unknown types to an exercise, same as the Gson mapping.
+     */
+    private fun readLinkedRoutine(reader: JsonReader, routine: Routine) {
+        var categoryId = ""
+        var sectionId = ""
+        var exerciseId = ""
+        var level = ""
+        var title = ""
+        var description = ""
+        var youTubeId = ""
+        var videoId = ""
+        var type = ""
+        var mode = ""
+        var defaultSet = ""
+
+        reader.beginObject()
+
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "categoryId" -> categoryId = reader.nextString()
+                "sectionId" -> sectionId = reader.nextString()
+                "exerciseId" -> exerciseId = reader.nextString()
+                "level" -> level = reader.nextString()
+                "title" -> title = reader.nextString()
+                "description" -> description = reader.nextString()
+                "youTubeId" -> youTubeId = reader.nextString()
+                "videoId" -> videoId = reader.nextString()
+                "type" -> type = reader.nextString()
+                "mode" -> mode = reader.nextString()
+                "defaultSet" -> defaultSet = reader.nextString()
+                else -> reader.skipValue()
+            }
+        }
+
+        reader.endObject()
+
+        when (type) {
+            "category" -> routine.insertCategory(Category(categoryId, title))
+            "section" -> routine.insertSection(Section(sectionId, title, description, toSectionMode(mode)))
+            else -> routine.insertExercise(Exercise(exerciseId, level, title, description, youTubeId, videoId, defaultSet))
+        }
+    }
+
+    private fun toSectionMode(mode: String): SectionMode {
+        return when (mode) {
+            "all" -> SectionMode.All
+            "pick" -> SectionMode.Pick
+            else -> SectionMode.Levels
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.bodyweight.fitness.stream
+
+import android.os.SystemClock
+
+import com.bodyweight.fitness.App
+import com.bodyweight.fitness.extension.debug
+import com.bodyweight.fitness.model.Routine
+import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.SchemaMigration
+import com.bodyweight.fitness.repository.SetEditBuffer
+
+import rx.Observable
+import rx.android.schedulers.AndroidSchedulers
+import rx.schedulers.Schedulers
+
+/**
+ * Loads the current routine on a background thread when the application starts. Touching RoutineStream
+ * before it is ready blocks until the load finishes, so views wait for ready before binding to it.
+ */
+object RoutinePreloader {
+    @Volatile
+    var isReady = false
+        private set
+
+    /**
+     * Emits the loaded routine on the main thread, today's workout is migrated to it before anything binds.
+     * Set edits left by a process that died are replayed first, both run on the same background thread.
+     */
+    val ready: Observable<Routine> = Observable
+            .fromCallable {
+                SetEditBuffer.replayJournal()
+
+                RoutineStream.routine
+            }
+            .doOnNext {
+                Repository.withRealm {
+                    SchemaMigration().migrateSchemaIfNeeded()
+                }
+            }
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .doOnNext {
+                isReady = true
+
+                debug("Routine ready ${SystemClock.elapsedRealtime() - App.startElapsedRealtime} ms after start")
+            }
+            .cache()
+
+    /**
+     * A routine that fails to load is a broken build, the error is not handled so the app crashes as before.
+     */
+    fun start() {
+        ready.subscribe()
+    }
+
+    /**
+     * Runs the action right away when the routine is ready, otherwise once it is.
+     */
+    fun whenReady(action: () -> Unit) {
+        if (isReady) {
+            action()
+        } else {
+            ready.subscribe { action() }
+        }
+    }
+}
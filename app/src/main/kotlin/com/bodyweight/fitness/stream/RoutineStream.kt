@@ -4,10 +4,7 @@ import com.bodyweight.fitness.App
 import com.bodyweight.fitness.model.*
 import com.bodyweight.fitness.utils.Preferences
 
-import com.google.gson.Gson
-
-import org.apache.commons.io.IOUtils
-
+import java.io.FileNotFoundException
 import java.io.IOException
 
 import com.bodyweight.fitness.R
@@ -15,35 +12,98 @@ import com.bodyweight.fitness.adapter.SpinnerRoutine
 import com.bodyweight.fitness.extension.debug
 
 import rx.Observable
-import rx.android.schedulers.AndroidSchedulers
-import rx.subjects.PublishSubject
 
-class JsonRoutineLoader {
+/**
+ * Reads the routines compiled into assets at build time, the json resource is only parsed when the
+ * compiled routine is missing.
+ */
+class RoutineLoader {
     fun getRoutine(resource: Int): Routine {
+        val resources = App.context!!.resources
+
         try {
-            val raw = IOUtils.toString(App.context!!.resources.openRawResource(resource))
-            val jsonRoutine = Gson().fromJson(raw, JSONRoutine::class.java)
+            val name = resources.getResourceEntryName(resource)
+
+            return BinaryRoutineReader.read(App.context!!.assets.open("routines/$name.routine"))
+        } catch (e: FileNotFoundException) {
+            debug("Compiled routine is missing, parsing json: " + e.message)
+        }
 
-            return Routine(jsonRoutine)
+        try {
+            return JsonRoutineReader.read(resources.openRawResource(resource))
         } catch (e: IOException) {
             error(e.message.toString())
         }
     }
 }
 
+/**
+ * Keeps the most recently used routine graphs so switching routines does not parse the json again.
+ */
+class RoutineCache(private val maxSize: Int, private val loader: (String) -> Routine) {
+    private val routines = object : LinkedHashMap<String, Routine>(maxSize, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Routine>?): Boolean {
+            return size > maxSize
+        }
+    }
+
+    val size: Int
+        @Synchronized get() = routines.size
+
+    /**
+     * Levels chosen while the routine sat in the cache are applied again before it is returned.
+     */
+    @Synchronized
+    fun get(routineId: String): Routine {
+        routines[routineId]?.let {
+            it.applyLevels()
+
+            return it
+        }
+
+        val routine = loader(routineId)
+
+        routines.put(routineId, routine)
+
+        return routine
+    }
+
+    @Synchronized
+    fun contains(routineId: String): Boolean {
+        return routines.containsKey(routineId)
+    }
+}
+
 object RoutineStream {
-    private val routineSubject = PublishSubject.create<Routine>()
-    private val exerciseSubject = PublishSubject.create<Exercise>()
-
-    var routine: Routine =
-            if (Preferences.defaultRoutine == "routine0") {
-                JsonRoutineLoader().getRoutine(R.raw.bodyweight_fitness_recommended_routine)
-            } else if(Preferences.defaultRoutine == "d8a722a0-fae2-4e7e-a751-430348c659fe") {
-                JsonRoutineLoader().getRoutine(R.raw.starting_stretching_flexibility_routine)
+    private val bodyweightFitnessRoutineId = "routine0"
+    private val startingStretchingRoutineId = "d8a722a0-fae2-4e7e-a751-430348c659fe"
+    private val moldingMobilityRoutineId = "e73593f4-ee17-4b9b-912a-87fa3625f63d"
+
+    private val routineCache = RoutineCache(3) {
+        when (it) {
+            bodyweightFitnessRoutineId -> RoutineLoader().getRoutine(R.raw.bodyweight_fitness_recommended_routine)
+            startingStretchingRoutineId -> RoutineLoader().getRoutine(R.raw.starting_stretching_flexibility_routine)
+            else -> RoutineLoader().getRoutine(R.raw.molding_mobility_flexibility_routine)
+        }
+    }
+
+    private val routineState = StateStore(
+            if (Preferences.defaultRoutine == bodyweightFitnessRoutineId) {
+                routineCache.get(bodyweightFitnessRoutineId)
+            } else if(Preferences.defaultRoutine == startingStretchingRoutineId) {
+                routineCache.get(startingStretchingRoutineId)
             } else {
-                JsonRoutineLoader().getRoutine(R.raw.molding_mobility_flexibility_routine)
-            }
-    
+                routineCache.get(moldingMobilityRoutineId)
+            })
+
+    private val exerciseState = StateStore(routineState.value.linkedExercises.first())
+
+    /**
+     * The routine is replaced before its first exercise is set, so exercise subscribers already see it.
+     */
+    var routine: Routine
+        get() = routineState.value
+
         set(value) {
             if (value.routineId.equals(routine.routineId)) {
                 return
@@ -51,49 +111,36 @@ object RoutineStream {
 
             Preferences.defaultRoutine = value.routineId
 
+            routineState.value = value
             exercise = value.linkedExercises.first()
 
-            routineSubject.onNext(value)
-
-            field = value
-
             debug("set value of: " + routine.title)
         }
 
-    var exercise: Exercise = routine.linkedExercises.first()
-        set(value) {
-            exerciseSubject.onNext(value)
+    var exercise: Exercise
+        get() = exerciseState.value
 
-            field = value
+        set(value) {
+            exerciseState.value = value
         }
 
     fun setRoutine(spinnerRoutine: SpinnerRoutine) {
         when(spinnerRoutine.id) {
             0 -> {
-                routine = JsonRoutineLoader().getRoutine(R.raw.bodyweight_fitness_recommended_routine)
+                routine = routineCache.get(bodyweightFitnessRoutineId)
             }
             1 -> {
-                routine = JsonRoutineLoader().getRoutine(R.raw.starting_stretching_flexibility_routine)
+                routine = routineCache.get(startingStretchingRoutineId)
             }
             2 -> {
-                routine = JsonRoutineLoader().getRoutine(R.raw.molding_mobility_flexibility_routine)
+                routine = routineCache.get(moldingMobilityRoutineId)
             }
         }
     }
 
-    fun routineObservable(): Observable<Routine> {
-        return Observable.merge(Observable.just(routine).publish().refCount(), routineSubject)
-                .observeOn(AndroidSchedulers.mainThread())
-                .publish()
-                .refCount()
-    }
+    fun routineObservable(): Observable<Routine> = routineState.observable
 
-    fun exerciseObservable(): Observable<Exercise> {
-        return Observable.merge(Observable.just(exercise).publish().refCount(), exerciseSubject)
-                .observeOn(AndroidSchedulers.mainThread())
-                .publish()
-                .refCount()
-    }
+    fun exerciseObservable(): Observable<Exercise> = exerciseState.observable
 
     fun setLevel(chosenExercise: Exercise, level: Int) {
         routine.setLevel(chosenExercise, level)
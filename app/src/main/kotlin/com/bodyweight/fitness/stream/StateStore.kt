@@ -0,0 +1,33 @@
+package com.bodyweight.fitness.stream
+
+import android.os.Handler
+import android.os.Looper
+
+import rx.Observable
+import rx.subjects.BehaviorSubject
+
+/**
+ * Holds the latest value of a piece of ui state. Subscribers get the current value as soon as they subscribe
+ * and then every change, setting the value it already holds emits nothing. Values are delivered on the main
+ * thread without rescheduling, a value set on another thread is posted to the main thread first.
+ */
+class StateStore<T>(initialValue: T) {
+    private val handler = Handler(Looper.getMainLooper())
+    private val subject = BehaviorSubject.create(initialValue)
+
+    /**
+     * Shared by every subscriber, so binding a view does not build a new chain.
+     */
+    val observable: Observable<T> = subject.distinctUntilChanged()
+
+    var value: T
+        get() = subject.value
+
+        set(value) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                subject.onNext(value)
+            } else {
+                handler.post { subject.onNext(value) }
+            }
+        }
+}
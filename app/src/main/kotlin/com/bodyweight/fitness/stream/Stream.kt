@@ -20,28 +20,23 @@ object UiEvent {
 }
 
 object Stream {
-    var currentDrawerId: Int = R.id.action_menu_home
-        private set
+    private val drawerState = StateStore(R.id.action_menu_home)
+    private val calendarPageState = StateStore(60)
+    private val calendarDayState = StateStore(CalendarDay())
 
-    var currentCalendarPage: Int = 60
-        private set
-
-    var currentCalendarDay: CalendarDay = CalendarDay()
-        private set
+    val currentDrawerId: Int get() = drawerState.value
+    val currentCalendarPage: Int get() = calendarPageState.value
+    val currentCalendarDay: CalendarDay get() = calendarDayState.value
 
     private val menuSubject = PublishSubject.create<Int>()
-    private val drawerSubject = PublishSubject.create<Int>()
     private val restTimerSubject = PublishSubject.create<Int>()
     private val loggedSecondsSubject = PublishSubject.create<Int>()
     private val loggedSetRepsSubject = PublishSubject.create<SetReps>()
 
-    private val calendarPageSubject = PublishSubject.create<Int>()
-    private val calendarDaySubject = PublishSubject.create<CalendarDay>()
-
     /**
-     * Emits when changes to repository have been made.
+     * Emits what changed whenever changes to repository have been made.
      */
-    private val repositorySubject = PublishSubject.create<Boolean>()
+    private val repositorySubject = PublishSubject.create<RepositoryChange>()
 
     /**
      * Observables that should be re-emitted should be functions rather than values.
@@ -51,28 +46,13 @@ object Stream {
     val loggedSecondsObservable: Observable<Int> get() = loggedSecondsSubject
     val loggedSetRepsObservable: Observable<SetReps> get() = loggedSetRepsSubject
 
-    fun drawerObservable(): Observable<Int> {
-        return Observable.merge(Observable.just(currentDrawerId).publish().refCount(), drawerSubject)
-                .observeOn(AndroidSchedulers.mainThread())
-                .publish()
-                .refCount()
-    }
+    fun drawerObservable(): Observable<Int> = drawerState.observable
 
-    fun calendarPageObservable(): Observable<Int> {
-        return Observable.merge(Observable.just(currentCalendarPage).publish().refCount(), calendarPageSubject)
-                .observeOn(AndroidSchedulers.mainThread())
-                .publish()
-                .refCount()
-    }
+    fun calendarPageObservable(): Observable<Int> = calendarPageState.observable
 
-    fun calendarDayObservable(): Observable<CalendarDay> {
-        return Observable.merge(Observable.just(currentCalendarDay).publish().refCount(), calendarDaySubject)
-                .observeOn(AndroidSchedulers.mainThread())
-                .publish()
-                .refCount()
-    }
+    fun calendarDayObservable(): Observable<CalendarDay> = calendarDayState.observable
 
-    fun repositoryObservable(): Observable<Boolean> {
+    fun repositoryObservable(): Observable<RepositoryChange> {
         return repositorySubject.observeOn(AndroidSchedulers.mainThread()).publish().refCount()
     }
 
@@ -85,9 +65,7 @@ object Stream {
     }
 
     fun setDrawer(drawerMenuItemId: Int) {
-        currentDrawerId = drawerMenuItemId
-
-        drawerSubject.onNext(drawerMenuItemId)
+        drawerState.value = drawerMenuItemId
     }
 
     fun setLoggedSeconds(loggedSeconds: Int) {
@@ -99,16 +77,14 @@ object Stream {
     }
 
     fun setCalendarPage(page: Int) {
-        currentCalendarPage = page
-        calendarPageSubject.onNext(page)
+        calendarPageState.value = page
     }
 
     fun setCalendarDay(day: CalendarDay) {
-        currentCalendarDay = day
-        calendarDaySubject.onNext(day)
+        calendarDayState.value = day
     }
 
-    fun setRepository() {
-        repositorySubject.onNext(true)
+    fun setRepository(change: RepositoryChange) {
+        repositorySubject.onNext(change)
     }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.bodyweight.fitness.stream
+
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+
+import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.utils.Preferences
+
+import rx.Observable
+
+/**
+ * What a countdown shows. The key tells what the countdown was set for, like the exercise id,
+ * seconds is the remaining time rounded up so it reaches zero when the countdown finishes.
+ */
+data class TimerState(val key: String, val seconds: Int, val isPlaying: Boolean, val isFinished: Boolean = false)
+
+/**
+ * Countdown measured against a deadline on the elapsed realtime clock, so it keeps time through pauses,
+ * sleep and views being recreated. It only wakes up when the displayed second changes.
+ * Must be used from the main thread.
+ */
+class CountdownTimer(private val clock: () -> Long = { SystemClock.elapsedRealtime() }) {
+    private val handler = Handler(Looper.getMainLooper())
+    private val tickRunnable = Runnable { tick() }
+
+    private var key = ""
+    private var durationMillis = 0L
+    private var remainingMillis = 0L
+    private var deadline = 0L
+    private var isPlaying = false
+
+    private val stateStore = StateStore(TimerState(key, 0, false))
+
+    val state: TimerState get() = stateStore.value
+    val observable: Observable<TimerState> get() = stateStore.observable
+
+    /**
+     * The elapsed realtime at which the countdown finishes, null while it is not running.
+     */
+    val finishesAt: Long?
+        get() = if (isPlaying) deadline else null
+
+    /**
+     * Time the countdown has been running since it was reset or last cleared, increases included.
+     */
+    val elapsedSeconds: Int
+        get() = ((durationMillis - currentRemainingMillis() + 500) / 1000).toInt()
+
+    fun reset(seconds: Int, key: String = this.key) {
+        handler.removeCallbacks(tickRunnable)
+
+        this.key = key
+
+        durationMillis = seconds * 1000L
+        remainingMillis = durationMillis
+        isPlaying = false
+
+        publish()
+    }
+
+    fun start() {
+        if (isPlaying || remainingMillis <= 0) {
+            return
+        }
+
+        deadline = clock() + remainingMillis
+        isPlaying = true
+
+        tick()
+    }
+
+    fun pause() {
+        if (!isPlaying) {
+            return
+        }
+
+        handler.removeCallbacks(tickRunnable)
+
+        remainingMillis = currentRemainingMillis()
+        isPlaying = false
+
+        publish()
+    }
+
+    fun increase(seconds: Int) {
+        durationMillis += seconds * 1000L
+
+        if (isPlaying) {
+            deadline += seconds * 1000L
+
+            tick()
+        } else {
+            remainingMillis += seconds * 1000L
+
+            publish()
+        }
+    }
+
+    /**
+     * Starts measuring the elapsed time again from now, used once the elapsed time was logged.
+     */
+    fun clearElapsed() {
+        durationMillis = currentRemainingMillis()
+    }
+
+    /**
+     * Catches up with the clock, used when the alarm for the deadline wakes the device.
+     */
+    fun refresh() {
+        if (isPlaying) {
+            tick()
+        }
+    }
+
+    private fun tick() {
+        handler.removeCallbacks(tickRunnable)
+
+        remainingMillis = currentRemainingMillis()
+
+        if (remainingMillis <= 0) {
+            remainingMillis = 0
+            isPlaying = false
+
+            stateStore.value = TimerState(key, 0, false, true)
+
+            return
+        }
+
+        publish()
+
+        handler.postDelayed(tickRunnable, (remainingMillis - 1) % 1000 + 1)
+    }
+
+    private fun publish() {
+        stateStore.value = TimerState(key, ((remainingMillis + 999) / 1000).toInt(), isPlaying)
+    }
+
+    private fun currentRemainingMillis(): Long {
+        return if (isPlaying) Math.max(deadline - clock(), 0) else remainingMillis
+    }
+}
+
+/**
+ * The countdowns of the workout screen, kept outside the views so they run on while views are recreated.
+ */
+object TimerEngine {
+    val exerciseTimer = CountdownTimer()
+    val restTimer = CountdownTimer()
+
+    fun exerciseSeconds(exerciseId: String): Int {
+        return (Preferences.getTimerValueForExercise(exerciseId, 60 * 1000) / 1000).toInt()
+    }
+
+    fun restSeconds(): Int {
+        return Preferences.restTimerDefaultSeconds
+    }
+
+    /**
+     * Logs the time the exercise countdown ran since it was last logged, when timed sets are logged automatically.
+     */
+    fun logExerciseTime() {
+        val exerciseId = exerciseTimer.state.key
+        val loggedSeconds = exerciseTimer.elapsedSeconds
+
+        exerciseTimer.clearElapsed()
+
+        if (loggedSeconds > 0 && Preferences.automaticallyLogWorkoutTime() && RoutineStream.routine.getExercise(exerciseId)?.isTimedSet == true) {
+            if (Repository.logTimedSet(exerciseId, loggedSeconds)) {
+                Stream.setLoggedSeconds(loggedSeconds)
+            }
+        }
+    }
+
+    fun onExerciseFinished() {
+        logExerciseTime()
+
+        exerciseTimer.reset(exerciseSeconds(exerciseTimer.state.key))
+    }
+
+    fun onRestFinished() {
+        restTimer.reset(restSeconds())
+
+        Stream.setRestTimer()
+    }
+}
@@ -2,9 +2,13 @@ package com.bodyweight.fitness.ui
 
 import android.content.Intent
 import android.os.Bundle
+import android.os.SystemClock
 import android.view.Menu
 
 import android.view.MenuItem
+import android.view.ViewTreeObserver
+import com.bodyweight.fitness.App
+import com.bodyweight.fitness.extension.debug
 import com.bodyweight.fitness.repository.Repository
 import com.bodyweight.fitness.R
 import com.bodyweight.fitness.stream.Stream
@@ -20,12 +24,20 @@ import kotlinx.android.synthetic.main.activity_main.*
 import kotlinx.android.synthetic.main.view_toolbar.*
 
 class MainActivity : RxAppCompatActivity() {
+    companion object {
+        private var isFirstFrameReported = false
+    }
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
+        Repository.acquire()
+
         setContentView(R.layout.activity_main)
         setToolbar()
 
+        reportFirstFrame()
+
         val fragmentManager = fragmentManager
         val fragmentTransaction = fragmentManager.beginTransaction()
 
@@ -52,10 +64,10 @@ class MainActivity : RxAppCompatActivity() {
         RateThisApp.showRateDialogIfNeeded(this)
     }
 
-    override fun onStop() {
-        super.onStop()
+    override fun onDestroy() {
+        super.onDestroy()
 
-        Repository.realm.close()
+        Repository.release()
     }
 
     override fun onOptionsItemSelected(item: MenuItem): Boolean {
@@ -74,6 +86,27 @@ class MainActivity : RxAppCompatActivity() {
         return super.onPrepareOptionsMenu(menu)
     }
 
+    /**
+     * Logs the time from process start to the first frame of the first main activity.
+     */
+    private fun reportFirstFrame() {
+        if (isFirstFrameReported) {
+            return
+        }
+
+        isFirstFrameReported = true
+
+        window.decorView.viewTreeObserver.addOnPreDrawListener(object : ViewTreeObserver.OnPreDrawListener {
+            override fun onPreDraw(): Boolean {
+                window.decorView.viewTreeObserver.removeOnPreDrawListener(this)
+
+                debug("First frame ${SystemClock.elapsedRealtime() - App.startElapsedRealtime} ms after start")
+
+                return true
+            }
+        })
+    }
+
     private fun setToolbar() {
         setSupportActionBar(toolbar)
 
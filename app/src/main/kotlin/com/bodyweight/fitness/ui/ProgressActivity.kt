@@ -43,6 +43,8 @@ class ProgressActivity : RxAppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
+        Repository.acquire()
+
         setContentView(R.layout.activity_progress)
 
         view_progress_pager.offscreenPageLimit = 4
@@ -95,11 +97,18 @@ class ProgressActivity : RxAppCompatActivity() {
 
         Stream.repositoryObservable()
                 .bindToLifecycle(this)
+                .filter { it.repositoryRoutineId == primaryKeyRoutineId && it.exerciseId != null }
                 .subscribe {
-                    progressPagerAdapter.onRepositoryUpdated()
+                    progressPagerAdapter.onExerciseUpdated(it.exerciseId!!)
                 }
     }
 
+    override fun onDestroy() {
+        super.onDestroy()
+
+        Repository.release()
+    }
+
     override fun onOptionsItemSelected(item: MenuItem): Boolean {
         when (item.itemId) {
             android.R.id.home -> {
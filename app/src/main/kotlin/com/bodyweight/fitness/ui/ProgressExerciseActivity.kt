@@ -17,6 +17,8 @@ import com.trello.rxlifecycle.kotlin.bindToLifecycle
 import kotlinx.android.synthetic.main.activity_progress_card_set.view.*
 import kotlinx.android.synthetic.main.activity_progress_exercise.*
 
+import io.realm.Sort
+
 import org.joda.time.DateTime
 import rx.android.schedulers.AndroidSchedulers
 import java.util.*
@@ -43,6 +45,8 @@ class ProgressExerciseActivity : RxAppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
+        Repository.acquire()
+
         setContentView(R.layout.activity_progress_exercise)
 
         setSupportActionBar(toolbar)
@@ -80,16 +84,18 @@ class ProgressExerciseActivity : RxAppCompatActivity() {
         repositoryExercise?.let {
             if (it.defaultSet == "timed") {
                 graph_view.adapter = timeAdapter
-
-                updateGraph(timeAdapter)
             } else {
                 graph_view.adapter = repsAdapter
-
-                updateGraph(repsAdapter)
             }
         }
 
-        updateList()
+        updateHistory()
+    }
+
+    override fun onDestroy() {
+        super.onDestroy()
+
+        Repository.release()
     }
 
     fun updateTitle(data: DateTimeRepositorySet) {
@@ -124,137 +130,114 @@ class ProgressExerciseActivity : RxAppCompatActivity() {
         }
     }
 
-    fun updateGraph(adapter: RepsAdapter) {
-        Repository.realm.where(RepositoryExercise::class.java)
+    fun updateHistory() {
+        Repository.realm.where(RepositorySetHistory::class.java)
                 .equalTo("exerciseId", exerciseId)
-                .findAllAsync()
+                .findAllSortedAsync(arrayOf("startTime", "setIndex"), arrayOf(Sort.ASCENDING, Sort.ASCENDING))
                 .asObservable()
                 .filter { it.isLoaded }
                 .observeOn(AndroidSchedulers.mainThread())
                 .bindToLifecycle(this)
                 .subscribe {
-                    if (it.isNotEmpty()) {
-                        val list = ArrayList<DateTimeRepositorySet>()
-
-                        for (repositoryExercise in it) {
-                            val date = DateTime(repositoryExercise.routine?.startTime)
-
-                            for (repositorySet in repositoryExercise.sets.filter { !it.isTimed }) {
-                                list.add(DateTimeRepositorySet(date, repositorySet))
-                            }
-                        }
-
-                        adapter.changeData(list)
-
-                        if (list.size > 1) {
-                            updateTitle(list.first())
+                    repositoryExercise?.let { exercise ->
+                        if (exercise.defaultSet == "timed") {
+                            updateGraph(timeAdapter, it.filter { it.isTimed })
                         } else {
-                            graph_card_view.setGone()
+                            updateGraph(repsAdapter, it.filter { !it.isTimed })
                         }
-                    } else {
-                        graph_card_view.setGone()
                     }
+
+                    updateList(it)
                 }
     }
 
-    fun updateGraph(adapter: TimeAdapter) {
-        Repository.realm.where(RepositoryExercise::class.java)
-                .equalTo("exerciseId", exerciseId)
-                .findAllAsync()
-                .asObservable()
-                .filter { it.isLoaded }
-                .observeOn(AndroidSchedulers.mainThread())
-                .bindToLifecycle(this)
-                .subscribe {
-                    if (it.isNotEmpty()) {
-                        val list = ArrayList<DateTimeRepositorySet>()
+    fun updateGraph(adapter: RepsAdapter, history: List<RepositorySetHistory>) {
+        val list = toDateTimeRepositorySets(history)
 
-                        for (repositoryExercise in it) {
-                            val date = DateTime(repositoryExercise.routine?.startTime)
+        adapter.changeData(list)
 
-                            for (repositorySet in repositoryExercise.sets.filter { it.isTimed }) {
-                                list.add(DateTimeRepositorySet(date, repositorySet))
-                            }
-                        }
+        updateGraphTitle(list)
+    }
 
-                        adapter.changeData(list)
+    fun updateGraph(adapter: TimeAdapter, history: List<RepositorySetHistory>) {
+        val list = toDateTimeRepositorySets(history)
 
-                        if (list.size > 1) {
-                            updateTitle(list.first())
-                        } else {
-                            graph_card_view.setGone()
-                        }
-                    } else {
-                        graph_card_view.setGone()
-                    }
-                }
+        adapter.changeData(list)
+
+        updateGraphTitle(list)
     }
 
-    fun updateList() {
-        Repository.realm.where(RepositoryExercise::class.java)
-                .equalTo("exerciseId", exerciseId)
-                .findAllAsync()
-                .asObservable()
-                .filter { it.isLoaded }
-                .observeOn(AndroidSchedulers.mainThread())
-                .bindToLifecycle(this)
-                .subscribe {
-                    if (it.isNotEmpty()) {
-                        it.firstOrNull()?.let {
-                            exercise_title.text = it.title
-                            exercise_description.text = "Data"
-                        }
+    private fun toDateTimeRepositorySets(history: List<RepositorySetHistory>): ArrayList<DateTimeRepositorySet> {
+        val list = ArrayList<DateTimeRepositorySet>()
 
-                        exercise_sets.removeAllViews()
+        for (repositorySet in history) {
+            list.add(DateTimeRepositorySet(DateTime(repositorySet.startTime), repositorySet))
+        }
 
-                        for (repositoryExercise in it) {
-                            val date = DateTime(repositoryExercise.routine?.startTime).toString("d MMMM YYYY")
+        return list
+    }
 
-                            for ((index, repositorySet) in repositoryExercise.sets.withIndex()) {
-                                val view = exercise_sets.inflate(R.layout.activity_progress_card_set)
+    private fun updateGraphTitle(list: ArrayList<DateTimeRepositorySet>) {
+        if (list.size > 1) {
+            updateTitle(list.first())
+        } else {
+            graph_card_view.setGone()
+        }
+    }
 
-                                if (repositorySet.isTimed) {
-                                    val rawSeconds = repositorySet.seconds
+    fun updateList(history: List<RepositorySetHistory>) {
+        if (history.isNotEmpty()) {
+            exercise_title.text = history.first().title
+            exercise_description.text = "Data"
+        }
 
-                                    val stringMinutes = rawSeconds.formatMinutes(format = false)
-                                    val numberOfMinutes = rawSeconds.formatMinutesAsNumber()
-                                    val stringSeconds = rawSeconds.formatSeconds(format = false)
-                                    val numberOfSeconds = rawSeconds.formatSecondsAsNumber()
+        exercise_sets.removeAllViews()
 
-                                    val minutes = if (numberOfMinutes == 1) { "Minute" } else { "Minutes" }
-                                    val seconds = if (numberOfSeconds == 1) { "Second" } else { "Seconds" }
+        for (repositorySet in history) {
+            val date = DateTime(repositorySet.startTime).toString("d MMMM YYYY")
+            val index = repositorySet.setIndex
 
-                                    if (rawSeconds < 60) {
-                                        view.left_value.text = "$stringSeconds $seconds"
-                                    } else if (numberOfSeconds == 0 || numberOfSeconds == 60) {
-                                        view.left_value.text = "$stringMinutes $minutes"
-                                    } else {
-                                        view.left_value.text = "$stringMinutes $minutes, $stringSeconds $seconds"
-                                    }
+            val view = exercise_sets.inflate(R.layout.activity_progress_card_set)
 
-                                    view.left_label.text = "$date - Set ${index + 1}"
+            if (repositorySet.isTimed) {
+                val rawSeconds = repositorySet.seconds
 
-                                    view.right_value.text = ""
-                                    view.right_label.text = ""
-                                } else {
-                                    val reps = if (repositorySet.reps == 1) { "Rep" } else { "Reps" }
+                val stringMinutes = rawSeconds.formatMinutes(format = false)
+                val numberOfMinutes = rawSeconds.formatMinutesAsNumber()
+                val stringSeconds = rawSeconds.formatSeconds(format = false)
+                val numberOfSeconds = rawSeconds.formatSecondsAsNumber()
 
-                                    view.left_value.text = "${repositorySet.reps} $reps"
-                                    view.left_label.text = "$date - Set ${index + 1}"
+                val minutes = if (numberOfMinutes == 1) { "Minute" } else { "Minutes" }
+                val seconds = if (numberOfSeconds == 1) { "Second" } else { "Seconds" }
+
+                if (rawSeconds < 60) {
+                    view.left_value.text = "$stringSeconds $seconds"
+                } else if (numberOfSeconds == 0 || numberOfSeconds == 60) {
+                    view.left_value.text = "$stringMinutes $minutes"
+                } else {
+                    view.left_value.text = "$stringMinutes $minutes, $stringSeconds $seconds"
+                }
 
-                                    if (repositorySet.weight > 0.0) {
-                                        view.right_value.text = "${repositorySet.weight}"
-                                        view.right_label.text = "Weight"
-                                    } else {
-                                        view.right_value.text = ""
-                                        view.right_label.text = ""
-                                    }
-                                }
+                view.left_label.text = "$date - Set ${index + 1}"
 
-                                exercise_sets.addView(view)
-                            }
-                        }
-                    }
+                view.right_value.text = ""
+                view.right_label.text = ""
+            } else {
+                val reps = if (repositorySet.reps == 1) { "Rep" } else { "Reps" }
+
+                view.left_value.text = "${repositorySet.reps} $reps"
+                view.left_label.text = "$date - Set ${index + 1}"
+
+                if (repositorySet.weight > 0.0) {
+                    view.right_value.text = "${repositorySet.weight}"
+                    view.right_label.text = "Weight"
+                } else {
+                    view.right_value.text = ""
+                    view.right_label.text = ""
                 }
+            }
+
+            exercise_sets.addView(view)
+        }
     }
-}
\ No newline at end of file
+}
@@ -14,6 +14,8 @@ import com.bodyweight.fitness.R
 import com.bodyweight.fitness.dialog.LogWorkoutDialog
 import com.bodyweight.fitness.dialog.ProgressDialog
 import com.bodyweight.fitness.model.DialogType
+import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.stream.RoutinePreloader
 import com.bodyweight.fitness.stream.RoutineStream
 import com.bodyweight.fitness.stream.Stream
 import com.bodyweight.fitness.stream.UiEvent
@@ -35,6 +37,8 @@ class WorkoutActivity : RxAppCompatActivity(), SharedPreferences.OnSharedPrefere
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
+        Repository.acquire()
+
         setContentView(R.layout.activity_workout)
         setToolbar()
 
@@ -47,15 +51,18 @@ class WorkoutActivity : RxAppCompatActivity(), SharedPreferences.OnSharedPrefere
                     startActivity(Intent(this, DashboardActivity::class.java))
                 }
 
-        RoutineStream.exerciseObservable().bindUntilEvent(this, ActivityEvent.DESTROY).subscribe { exercise ->
-            supportActionBar?.let { toolbar ->
-                toolbar.title = exercise.title
+        RoutinePreloader.ready
+                .flatMap { RoutineStream.exerciseObservable() }
+                .bindUntilEvent(this, ActivityEvent.DESTROY)
+                .subscribe { exercise ->
+                    supportActionBar?.let { toolbar ->
+                        toolbar.title = exercise.title
 
-                exercise.section?.let {
-                    toolbar.subtitle = it.title + " " + exercise.description
+                        exercise.section?.let {
+                            toolbar.subtitle = it.title + " " + exercise.description
+                        }
+                    }
                 }
-            }
-        }
     }
 
     override fun onResume() {
@@ -90,6 +97,12 @@ class WorkoutActivity : RxAppCompatActivity(), SharedPreferences.OnSharedPrefere
         clearFlagKeepScreenOn()
     }
 
+    override fun onDestroy() {
+        super.onDestroy()
+
+        Repository.release()
+    }
+
     override fun onOptionsItemSelected(item: MenuItem): Boolean {
         Stream.setMenu(item.itemId)
 
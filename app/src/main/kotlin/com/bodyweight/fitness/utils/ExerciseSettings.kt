@@ -0,0 +1,184 @@
+package com.bodyweight.fitness.utils
+
+import android.util.AtomicFile
+
+import rx.schedulers.Schedulers
+
+import java.io.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Timer values, number of reps and the chosen exercise of each section, kept in one small binary file
+ * instead of a SharedPreferences entry per id. The file is read in bulk on first use and held in memory,
+ * changes are written together by replacing the whole file on a background thread shortly after.
+ *
+ * Layout: int magic, short version, then the timer values (int count, utf exerciseId, long value),
+ * the number of reps (int count, utf exerciseId, int value) and the exercises for sections
+ * (int count, utf sectionId, utf exerciseId).
+ */
+class ExerciseSettings(file: File) {
+    private val magic = 0x42574553
+    private val version = 1
+
+    private val atomicFile = AtomicFile(file)
+    private val worker = Schedulers.io().createWorker()
+
+    private val timerValues = HashMap<String, Long>()
+    private val numberOfReps = HashMap<String, Int>()
+    private val exerciseIdForSection = HashMap<String, String>()
+
+    private var isDirty = false
+
+    init {
+        if (file.exists()) {
+            try {
+                read(DataInputStream(BufferedInputStream(atomicFile.openRead())))
+            } catch (e: IOException) {
+                timerValues.clear()
+                numberOfReps.clear()
+                exerciseIdForSection.clear()
+            }
+        }
+    }
+
+    @Synchronized
+    fun getTimerValue(exerciseId: String): Long? = timerValues[exerciseId]
+
+    @Synchronized
+    fun getNumberOfReps(exerciseId: String): Int? = numberOfReps[exerciseId]
+
+    @Synchronized
+    fun getExerciseIdForSection(sectionId: String): String? = exerciseIdForSection[sectionId]
+
+    @Synchronized
+    fun setTimerValue(exerciseId: String, value: Long) {
+        if (timerValues.put(exerciseId, value) != value) {
+            markDirty()
+        }
+    }
+
+    @Synchronized
+    fun setNumberOfReps(exerciseId: String, value: Int) {
+        if (numberOfReps.put(exerciseId, value) != value) {
+            markDirty()
+        }
+    }
+
+    @Synchronized
+    fun setExerciseIdForSection(sectionId: String, exerciseId: String) {
+        if (exerciseIdForSection.put(sectionId, exerciseId) != exerciseId) {
+            markDirty()
+        }
+    }
+
+    /**
+     * Moves the values stored under the old per id keys into the file, values already in the file win.
+     * The file is written before the keys are removed, so an interrupted migration simply runs again.
+     */
+    fun migrate(snapshot: PreferenceSnapshot, timerPrefix: String, numberOfRepsPrefix: String, exerciseIdForSectionPrefix: String) {
+        val timers = snapshot.withPrefix(timerPrefix)
+        val reps = snapshot.withPrefix(numberOfRepsPrefix)
+        val sections = snapshot.withPrefix(exerciseIdForSectionPrefix)
+
+        if (timers.isEmpty() && reps.isEmpty() && sections.isEmpty()) {
+            return
+        }
+
+        synchronized(this) {
+            for ((exerciseId, value) in timers) {
+                (value as? Long)?.let { timerValues.getOrPut(exerciseId) { it } }
+            }
+
+            for ((exerciseId, value) in reps) {
+                (value as? Int)?.let { numberOfReps.getOrPut(exerciseId) { it } }
+            }
+
+            for ((sectionId, value) in sections) {
+                (value as? String)?.let { exerciseIdForSection.getOrPut(sectionId) { it } }
+            }
+
+            isDirty = true
+        }
+
+        flush()
+
+        snapshot.removeWithPrefix(timerPrefix)
+        snapshot.removeWithPrefix(numberOfRepsPrefix)
+        snapshot.removeWithPrefix(exerciseIdForSectionPrefix)
+    }
+
+    /**
+     * Writes the settings if anything changed since the last write, a failed write keeps the previous file.
+     */
+    fun flush() {
+        val bytes = synchronized(this) {
+            if (!isDirty) {
+                return
+            }
+
+            isDirty = false
+
+            ByteArrayOutputStream().also { write(DataOutputStream(it)) }.toByteArray()
+        }
+
+        synchronized(atomicFile) {
+            val output = atomicFile.startWrite()
+
+            try {
+                output.write(bytes)
+
+                atomicFile.finishWrite(output)
+            } catch (e: IOException) {
+                atomicFile.failWrite(output)
+            }
+        }
+    }
+
+    /**
+     * Changes made within the delay share one write.
+     */
+    private fun markDirty() {
+        if (!isDirty) {
+            isDirty = true
+
+            worker.schedule({ flush() }, 500, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private fun read(input: DataInputStream) {
+        input.use {
+            if (it.readInt() != magic || it.readShort().toInt() != version) {
+                throw IOException("Unsupported settings format")
+            }
+
+            repeat(it.readInt()) { _ -> timerValues.put(it.readUTF(), it.readLong()) }
+            repeat(it.readInt()) { _ -> numberOfReps.put(it.readUTF(), it.readInt()) }
+            repeat(it.readInt()) { _ -> exerciseIdForSection.put(it.readUTF(), it.readUTF()) }
+        }
+    }
+
+    private fun write(output: DataOutputStream) {
+        output.writeInt(magic)
+        output.writeShort(version)
+
+        output.writeInt(timerValues.size)
+        for ((exerciseId, value) in timerValues) {
+            output.writeUTF(exerciseId)
+            output.writeLong(value)
+        }
+
+        output.writeInt(numberOfReps.size)
+        for ((exerciseId, value) in numberOfReps) {
+            output.writeUTF(exerciseId)
+            output.writeInt(value)
+        }
+
+        output.writeInt(exerciseIdForSection.size)
+        for ((sectionId, exerciseId) in exerciseIdForSection) {
+            output.writeUTF(sectionId)
+            output.writeUTF(exerciseId)
+        }
+
+        output.flush()
+    }
+}
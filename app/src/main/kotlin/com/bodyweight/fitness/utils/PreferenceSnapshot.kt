@@ -0,0 +1,135 @@
+package com.bodyweight.fitness.utils
+
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+
+/**
+ * Copy of the shared preferences held in memory, so reads never go back to SharedPreferences.
+ * Writes change the copy at once and are committed together with a single apply on the next pass of
+ * the main looper. Changes made elsewhere, like the settings screen, reach the copy through the listener.
+ */
+class PreferenceSnapshot(private val sharedPreferences: SharedPreferences) : SharedPreferences.OnSharedPreferenceChangeListener {
+    private val handler = Handler(Looper.getMainLooper())
+    private val flushRunnable = Runnable { flush() }
+
+    private val values = HashMap<String, Any?>(sharedPreferences.all)
+    private val pending = LinkedHashMap<String, Any?>()
+
+    init {
+        sharedPreferences.registerOnSharedPreferenceChangeListener(this)
+    }
+
+    @Synchronized
+    fun getBoolean(key: String, defaultValue: Boolean): Boolean {
+        return values[key] as? Boolean ?: defaultValue
+    }
+
+    @Synchronized
+    fun getInt(key: String, defaultValue: Int): Int {
+        return values[key] as? Int ?: defaultValue
+    }
+
+    @Synchronized
+    fun getLong(key: String, defaultValue: Long): Long {
+        return values[key] as? Long ?: defaultValue
+    }
+
+    @Synchronized
+    fun getString(key: String, defaultValue: String): String {
+        return values[key] as? String ?: defaultValue
+    }
+
+    /**
+     * Accepts the types SharedPreferences stores: Boolean, Int, Long, Float and String.
+     */
+    @Synchronized
+    fun put(key: String, value: Any) {
+        if (values[key] == value) {
+            return
+        }
+
+        values.put(key, value)
+        pending.put(key, value)
+
+        if (pending.size == 1) {
+            handler.post(flushRunnable)
+        }
+    }
+
+    /**
+     * Returns the entries whose key starts with the prefix, keyed by the rest of the key.
+     */
+    @Synchronized
+    fun withPrefix(prefix: String): Map<String, Any?> {
+        return values.filterKeys { it.startsWith(prefix) }.mapKeys { it.key.substring(prefix.length) }
+    }
+
+    @Synchronized
+    fun removeWithPrefix(prefix: String) {
+        val keys = values.keys.filter { it.startsWith(prefix) }
+
+        for (key in keys) {
+            values.remove(key)
+            pending.put(key, null)
+        }
+
+        if (keys.isNotEmpty() && pending.size == keys.size) {
+            handler.post(flushRunnable)
+        }
+    }
+
+    @Synchronized
+    fun flush() {
+        handler.removeCallbacks(flushRunnable)
+
+        if (pending.isEmpty()) {
+            return
+        }
+
+        val editor = sharedPreferences.edit()
+
+        for ((key, value) in pending) {
+            when (value) {
+                is Boolean -> editor.putBoolean(key, value)
+                is Int -> editor.putInt(key, value)
+                is Long -> editor.putLong(key, value)
+                is Float -> editor.putFloat(key, value)
+                is String -> editor.putString(key, value)
+                null -> editor.remove(key)
+            }
+        }
+
+        pending.clear()
+
+        editor.apply()
+    }
+
+    /**
+     * Values written through the snapshot but not yet applied win over the stored ones.
+     */
+    @Synchronized
+    override fun onSharedPreferenceChanged(sharedPreferences: SharedPreferences, key: String?) {
+        if (key == null) {
+            values.clear()
+            values.putAll(sharedPreferences.all)
+            values.putAll(pending)
+            values.values.removeAll { it == null }
+        } else if (pending.containsKey(key)) {
+            return
+        } else if (!sharedPreferences.contains(key)) {
+            values.remove(key)
+        } else {
+            val current = values[key]
+
+            values.put(key, when (current) {
+                is Boolean -> sharedPreferences.getBoolean(key, current)
+                is Int -> sharedPreferences.getInt(key, current)
+                is Long -> sharedPreferences.getLong(key, current)
+                is Float -> sharedPreferences.getFloat(key, current)
+                is String -> sharedPreferences.getString(key, current)
+                else -> sharedPreferences.all[key]
+            })
+        }
+    }
+}
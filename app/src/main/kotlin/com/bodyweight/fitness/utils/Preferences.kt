@@ -1,6 +1,5 @@
 package com.bodyweight.fitness.utils
 
-import android.content.SharedPreferences
 import android.preference.PreferenceManager
 
 import com.bodyweight.fitness.App
@@ -9,105 +8,116 @@ import com.bodyweight.fitness.Constants
 import com.bodyweight.fitness.R
 import com.bodyweight.fitness.model.WeightMeasurementUnit
 
+import java.io.File
+
 object Preferences {
     init {
         PreferenceManager.setDefaultValues(App.context, R.xml.settings, false)
     }
 
+    private val snapshot = PreferenceSnapshot(PreferenceManager.getDefaultSharedPreferences(App.context))
+
+    private val exerciseSettings = ExerciseSettings(File(App.context!!.filesDir, "exercise_settings"))
+
+    private val schemaCheckedVersionKeys = PreferenceKeys(Constants.preferencesSchemaCheckedVersion)
+
+    init {
+        exerciseSettings.migrate(snapshot,
+                Constants.preferencesTimerKey,
+                Constants.preferencesNumberOfRepsKey,
+                Constants.preferencesExerciseIdForSection)
+    }
+
     var introductionShown: Boolean
         get() {
-            return getSharedPreferences()
-                    .getBoolean(Constants.preferencesIntroductionShown, false)
+            return snapshot.getBoolean(Constants.preferencesIntroductionShown, false)
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putBoolean(Constants.preferencesIntroductionShown, value)
-                    .apply()
+            snapshot.put(Constants.preferencesIntroductionShown, value)
         }
 
     var defaultRoutine: String
         get() {
-            return getSharedPreferences()
-                    .getString(Constants.preferencesDefaultRoutineKey, "routine0")
+            return snapshot.getString(Constants.preferencesDefaultRoutineKey, "routine0")
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putString(Constants.preferencesDefaultRoutineKey, value)
-                    .apply()
+            snapshot.put(Constants.preferencesDefaultRoutineKey, value)
         }
 
     var showRestTimer: Boolean
         get() {
-            return getSharedPreferences()
-                    .getBoolean(Constants.preferencesShowRestTimer, true)
+            return snapshot.getBoolean(Constants.preferencesShowRestTimer, true)
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putBoolean(Constants.preferencesShowRestTimer, value)
-                    .apply()
+            snapshot.put(Constants.preferencesShowRestTimer, value)
         }
 
     var showRestTimerAfterWarmup: Boolean
         get() {
-            return getSharedPreferences()
-                    .getBoolean(Constants.preferencesShowRestTimerAfterWarmup, false)
+            return snapshot.getBoolean(Constants.preferencesShowRestTimerAfterWarmup, false)
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putBoolean(Constants.preferencesShowRestTimerAfterWarmup, value)
-                    .apply()
+            snapshot.put(Constants.preferencesShowRestTimerAfterWarmup, value)
         }
 
     var showRestTimerAfterBodylineDrills: Boolean
         get() {
-            return getSharedPreferences()
-                    .getBoolean(Constants.preferencesShowRestTimerAfterBodylineDrills, true)
+            return snapshot.getBoolean(Constants.preferencesShowRestTimerAfterBodylineDrills, true)
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putBoolean(Constants.preferencesShowRestTimerAfterBodylineDrills, value)
-                    .apply()
+            snapshot.put(Constants.preferencesShowRestTimerAfterBodylineDrills, value)
         }
 
     var showRestTimerAfterFlexibilityExercises: Boolean
         get() {
-            return getSharedPreferences()
-                    .getBoolean(Constants.preferencesShowRestTimerAfterFlexibilityExercises, false)
+            return snapshot.getBoolean(Constants.preferencesShowRestTimerAfterFlexibilityExercises, false)
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putBoolean(Constants.preferencesShowRestTimerAfterFlexibilityExercises, value)
-                    .apply()
+            snapshot.put(Constants.preferencesShowRestTimerAfterFlexibilityExercises, value)
         }
 
     var restTimerDefaultSeconds: Int
         get() {
-            return getSharedPreferences()
-                    .getString(Constants.preferencesRestTimerDefaultSeconds, "60").toInt()
+            return snapshot.getString(Constants.preferencesRestTimerDefaultSeconds, "60").toInt()
+        }
+
+        set(value) {
+            snapshot.put(Constants.preferencesRestTimerDefaultSeconds, value.toString())
+        }
+
+    /**
+     * Set once a sweep deleted objects, cleared when the file was compacted.
+     */
+    var compactionPending: Boolean
+        get() {
+            return snapshot.getBoolean(Constants.preferencesCompactionPending, false)
         }
 
         set(value) {
-            getSharedPreferences()
-                    .edit()
-                    .putString(Constants.preferencesRestTimerDefaultSeconds, value.toString())
-                    .apply()
+            snapshot.put(Constants.preferencesCompactionPending, value)
+        }
+
+    /**
+     * Schema version of the Realm file the last time orphaned objects were swept, 0 before the first sweep.
+     */
+    var sweptSchemaVersion: Long
+        get() {
+            return snapshot.getLong(Constants.preferencesSweptSchemaVersion, 0)
+        }
+
+        set(value) {
+            snapshot.put(Constants.preferencesSweptSchemaVersion, value)
         }
 
     val weightMeasurementUnit: WeightMeasurementUnit
         get() {
-            val value = getSharedPreferences().getString(Constants.preferencesWeightMeasurementUnitsKey, "kg")
+            val value = snapshot.getString(Constants.preferencesWeightMeasurementUnitsKey, "kg")
 
             if (value.equals("kg", ignoreCase = true)) {
                 return WeightMeasurementUnit.Kg
@@ -117,67 +127,61 @@ object Preferences {
         }
 
     fun playSoundWhenTimerStops(): Boolean {
-        return getSharedPreferences().getBoolean(Constants.preferencesPlaySoundWhenTimerStopsKey, true)
+        return snapshot.getBoolean(Constants.preferencesPlaySoundWhenTimerStopsKey, true)
     }
 
     fun automaticallyLogWorkoutTime(): Boolean {
-        return getSharedPreferences().getBoolean(Constants.preferencesAutomaticallyLogWorkoutTimeKey, true)
+        return snapshot.getBoolean(Constants.preferencesAutomaticallyLogWorkoutTimeKey, true)
     }
 
     fun keepScreenOnWhenAppIsRunning(): Boolean {
-        return getSharedPreferences().getBoolean(Constants.preferencesKeepScreenOnKey, true)
+        return snapshot.getBoolean(Constants.preferencesKeepScreenOnKey, true)
     }
 
     fun setTimerValue(exerciseId: String, value: Long) {
-        getSharedPreferences().edit().putLong(
-                String.format("%s%s", Constants.preferencesTimerKey, exerciseId),
-                value
-        ).apply()
+        exerciseSettings.setTimerValue(exerciseId, value)
     }
 
     fun setNumberOfReps(exerciseId: String, value: Int) {
-        getSharedPreferences().edit().putInt(
-                String.format("%s%s", Constants.preferencesNumberOfRepsKey, exerciseId),
-                value
-        ).apply()
+        exerciseSettings.setNumberOfReps(exerciseId, value)
     }
 
     fun getTimerValueForExercise(exerciseId: String, defaultValue: Long): Long {
-        return getSharedPreferences().getLong(
-                String.format("%s%s", Constants.preferencesTimerKey, exerciseId),
-                defaultValue
-        )
+        return exerciseSettings.getTimerValue(exerciseId) ?: defaultValue
     }
 
     fun getNumberOfRepsForExercise(exerciseId: String, defaultValue: Int): Int {
-        return getSharedPreferences().getInt(
-                String.format("%s%s", Constants.preferencesNumberOfRepsKey, exerciseId),
-                defaultValue
-        )
+        return exerciseSettings.getNumberOfReps(exerciseId) ?: defaultValue
     }
 
     fun setExerciseIdForSection(sectionId: String, exerciseId: String) {
-        getSharedPreferences().edit().putString(
-                String.format("%s%s", Constants.preferencesExerciseIdForSection, sectionId),
-                exerciseId
-        ).apply()
+        exerciseSettings.setExerciseIdForSection(sectionId, exerciseId)
     }
 
     fun getExerciseIdForSection(sectionId: String): String? {
-        val emptyId = "NULL"
-        val exerciseId = getSharedPreferences().getString(
-                String.format("%s%s", Constants.preferencesExerciseIdForSection, sectionId),
-                emptyId
-        )
+        return exerciseSettings.getExerciseIdForSection(sectionId)
+    }
 
-        return if (exerciseId == emptyId) {
-            null
-        } else {
-            exerciseId
-        }
+    /**
+     * Returns the app version that last checked today's workout of the routine against it, or 0.
+     */
+    fun getSchemaCheckedVersion(routineId: String): Int {
+        return snapshot.getInt(schemaCheckedVersionKeys.get(routineId), 0)
+    }
+
+    fun setSchemaCheckedVersion(routineId: String, versionCode: Int) {
+        snapshot.put(schemaCheckedVersionKeys.get(routineId), versionCode)
     }
+}
+
+/**
+ * Keys for values stored per id, built once for each id.
+ */
+private class PreferenceKeys(private val prefix: String) {
+    private val keys = HashMap<String, String>()
 
-    private fun getSharedPreferences(): SharedPreferences {
-        return PreferenceManager.getDefaultSharedPreferences(App.context)
+    @Synchronized
+    fun get(id: String): String {
+        return keys.getOrPut(id) { prefix + id }
     }
 }
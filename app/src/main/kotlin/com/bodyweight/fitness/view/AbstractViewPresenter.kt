@@ -6,6 +6,8 @@ import android.os.Parcelable
 import android.util.AttributeSet
 import android.widget.RelativeLayout
 
+import com.bodyweight.fitness.stream.RoutinePreloader
+
 import java.io.Serializable
 
 abstract class AbstractPresenter : Serializable {
@@ -48,13 +50,20 @@ abstract class AbstractView : RelativeLayout {
 
         this.onCreateView()
 
-        presenter.bindView(this)
+        RoutinePreloader.whenReady {
+            presenter.bindView(this)
+        }
     }
 
     open fun onCreateView() {}
 
+    /**
+     * Presenters read the routine, so binding and updates wait until it is loaded while the layout is shown as is.
+     */
     open fun updateView() {
-        presenter.updateView()
+        RoutinePreloader.whenReady {
+            presenter.updateView()
+        }
     }
 
     override fun onSaveInstanceState(): Parcelable? {
@@ -75,6 +84,8 @@ abstract class AbstractView : RelativeLayout {
             super.onRestoreInstanceState(state.getParcelable(superStateKey))
         }
 
-        presenter.restoreView(this)
+        RoutinePreloader.whenReady {
+            presenter.restoreView(this)
+        }
     }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import com.bodyweight.fitness.R
 import com.bodyweight.fitness.isRoutineLogged
 import com.bodyweight.fitness.isToday
 import com.bodyweight.fitness.model.CalendarDay
+import com.bodyweight.fitness.repository.LoggedDaysIndex
 import com.bodyweight.fitness.setBackgroundResourceWithPadding
 import com.bodyweight.fitness.stream.Stream
 import com.trello.rxlifecycle.kotlin.bindToLifecycle
@@ -43,10 +44,17 @@ class CalendarPagePresenter : AbstractPresenter() {
 
             view.setListener(index)
             view.setIsToday(index, currentDayOfTheWeek.isToday())
-            view.showDot(index, currentDayOfTheWeek.isRoutineLogged())
             view.setText(index, currentDayOfTheWeek.dayOfMonth().asText)
         }
 
+        LoggedDaysIndex.observable
+                .bindToLifecycle(view)
+                .subscribe {
+                    for (index in 0..6) {
+                        view.showDot(index, firstDayOfTheWeek.plusDays(index).isRoutineLogged())
+                    }
+                }
+
         Stream.calendarPageObservable()
                 .bindToLifecycle(view)
                 .filter { it == viewPagerPosition }
@@ -4,32 +4,34 @@ import android.content.Context
 import android.content.Intent
 import android.support.v4.content.FileProvider
 import android.support.v4.view.ViewPager
+import android.support.v7.app.AlertDialog
 import android.support.v7.widget.LinearLayoutManager
 import android.util.AttributeSet
 import android.view.View
+import android.widget.ProgressBar
 import android.widget.Toast
 import com.bodyweight.fitness.Constants
 
 import com.bodyweight.fitness.R
 import com.bodyweight.fitness.adapter.CalendarPagerAdapter
 import com.bodyweight.fitness.adapter.CalendarListAdapter
-import com.bodyweight.fitness.isRoutineLoggedWithResults
-import com.bodyweight.fitness.model.RepositoryRoutine
-import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.toDayKey
+import com.bodyweight.fitness.repository.ExportProgress
+import com.bodyweight.fitness.repository.RepositoryReader
+import com.bodyweight.fitness.repository.WorkoutLogExport
 import com.bodyweight.fitness.stream.Stream
 
 import com.trello.rxlifecycle.kotlin.bindToLifecycle
 
-import io.realm.RealmResults
-import io.realm.Sort
-
 import kotlinx.android.synthetic.main.view_calendar.view.*
 
+import org.joda.time.DateTime
+
 import rx.Subscriber
+import rx.Subscription
 import rx.android.schedulers.AndroidSchedulers
 
 import java.io.File
-import java.io.FileOutputStream
 
 class CalendarPresenter : AbstractPresenter() {
     @Transient
@@ -38,6 +40,9 @@ class CalendarPresenter : AbstractPresenter() {
     @Transient
     val calendarListAdapter = CalendarListAdapter()
 
+    @Transient
+    private var exportSubscription: Subscription? = null
+
     override fun bindView(view: AbstractView) {
         super.bindView(view)
 
@@ -57,78 +62,33 @@ class CalendarPresenter : AbstractPresenter() {
 
         Stream.menuObservable
                 .bindToLifecycle(view)
-                .filter { it == R.id.action_export }
+                .filter { it == R.id.action_export && Stream.currentDrawerId == R.id.action_menu_workout_log }
                 .subscribe {
-                    Repository.realm.where(RepositoryRoutine::class.java)
-                            .findAllAsync()
-                            .sort("startTime", Sort.DESCENDING)
-                            .asObservable()
-                            .filter { it.isLoaded && Stream.currentDrawerId == R.id.action_menu_workout_log }
-                            .observeOn(AndroidSchedulers.mainThread())
-                            .bindToLifecycle(getView())
-                            .subscribe(object: Subscriber<RealmResults<RepositoryRoutine>>(){
-                                override fun onCompleted() {}
-
-                                override fun onError(e: Throwable) {
-                                    Toast.makeText(getView().context, "Error: Unable to export workout log", Toast.LENGTH_SHORT).show()
-                                }
-
-                                override fun onNext(it: RealmResults<RepositoryRoutine>) {
-                                    val context = getView().context
-
-                                    val path = File(context.filesDir, "csv");
-                                    val file = File(path, "LoggedWorkouts.csv").apply {
-                                        if (parentFile.mkdirs()) {
-                                            createNewFile()
-                                        }
-                                    }
-
-                                    var content = ""
-
-                                    for (repositoryRoutine: RepositoryRoutine in it) {
-                                        content += RepositoryRoutine.toCSV(repositoryRoutine)
-                                    }
-
-                                    FileOutputStream(file).apply {
-                                        write(content.toByteArray())
-                                        flush()
-                                        close()
-                                    }
-
-                                    context.startActivity(Intent().apply {
-                                        action = Intent.ACTION_SEND
-                                        type = "text/csv"
-                                        flags = Intent.FLAG_GRANT_READ_URI_PERMISSION
-
-                                        putExtra(Intent.EXTRA_STREAM, FileProvider.getUriForFile(context, Constants.fileProvider, file))
-                                    })
-                                }
-                            })
+                    exportWorkoutLog()
                 }
 
         Stream.repositoryObservable()
                 .bindToLifecycle(view)
+                .filter { it.dayKey == Stream.currentCalendarDay.getDate().toDayKey() }
                 .subscribe {
-                    val results = Stream.currentCalendarDay
-                            .getDate()
-                            .isRoutineLoggedWithResults()
-
-                    if (results.isNotEmpty()) {
-                        calendarListAdapter.setItems(results)
-
-                        view.showCardView()
-                    } else {
-                        view.hideCardView()
-                    }
+                    updateCalendarDay(Stream.currentCalendarDay.getDate())
                 }
 
         Stream.calendarDayObservable()
                 .bindToLifecycle(view)
                 .subscribe {
-                    val results = it.getDate().isRoutineLoggedWithResults()
+                    updateCalendarDay(it.getDate())
+                }
+    }
 
-                    if (results.isNotEmpty()) {
-                        calendarListAdapter.setItems(results)
+    fun updateCalendarDay(date: DateTime) {
+        RepositoryReader.routinesForDay(date.toDayKey())
+                .bindToLifecycle(getView())
+                .subscribe {
+                    val view = (getView() as CalendarView)
+
+                    if (it.isNotEmpty()) {
+                        calendarListAdapter.setItems(it)
 
                         view.showCardView()
                     } else {
@@ -137,6 +97,57 @@ class CalendarPresenter : AbstractPresenter() {
                 }
     }
 
+    fun exportWorkoutLog() {
+        exportSubscription?.unsubscribe()
+
+        val context = getView().context
+        val file = File(File(context.filesDir, "csv"), "LoggedWorkouts.csv")
+
+        val progressBar = ProgressBar(context, null, android.R.attr.progressBarStyleHorizontal).apply {
+            isIndeterminate = true
+        }
+
+        val progressDialog = AlertDialog.Builder(context)
+                .setTitle("Exporting workout log")
+                .setMessage("Preparing workouts")
+                .setView(progressBar)
+                .setNegativeButton("Cancel") { dialog, which -> exportSubscription?.unsubscribe() }
+                .setCancelable(false)
+                .show()
+
+        exportSubscription = WorkoutLogExport.export(file)
+                .observeOn(AndroidSchedulers.mainThread())
+                .bindToLifecycle(getView())
+                .doOnUnsubscribe { progressDialog.dismiss() }
+                .subscribe(object: Subscriber<ExportProgress>() {
+                    override fun onCompleted() {
+                        progressDialog.dismiss()
+
+                        context.startActivity(Intent().apply {
+                            action = Intent.ACTION_SEND
+                            type = "text/csv"
+                            flags = Intent.FLAG_GRANT_READ_URI_PERMISSION
+
+                            putExtra(Intent.EXTRA_STREAM, FileProvider.getUriForFile(context, Constants.fileProvider, file))
+                        })
+                    }
+
+                    override fun onError(e: Throwable) {
+                        progressDialog.dismiss()
+
+                        Toast.makeText(context, "Error: Unable to export workout log", Toast.LENGTH_SHORT).show()
+                    }
+
+                    override fun onNext(it: ExportProgress) {
+                        progressBar.isIndeterminate = false
+                        progressBar.max = it.total
+                        progressBar.progress = it.exported
+
+                        progressDialog.setMessage("${it.exported} of ${it.total} workouts")
+                    }
+                })
+    }
+
     fun onPageSelected(position: Int) {
         Stream.setCalendarPage(position)
     }
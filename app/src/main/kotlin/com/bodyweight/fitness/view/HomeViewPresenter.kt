@@ -7,10 +7,9 @@ import android.text.format.DateUtils
 import android.util.AttributeSet
 
 import com.bodyweight.fitness.*
-import com.bodyweight.fitness.model.RepositoryCategory
-import com.bodyweight.fitness.model.RepositoryRoutine
+import com.bodyweight.fitness.model.RepositoryChangeType
 import com.bodyweight.fitness.model.Routine
-import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.RepositoryReader
 import com.bodyweight.fitness.stream.RoutineStream
 import com.bodyweight.fitness.stream.Stream
 import com.bodyweight.fitness.ui.ProgressActivity
@@ -24,7 +23,12 @@ import kotlinx.android.synthetic.main.view_home_support.view.*
 
 import org.joda.time.DateTime
 
+import java.util.Date
+
 class HomeViewPresenter : AbstractPresenter() {
+    @Transient
+    private var todaysRepositoryRoutineId: String? = null
+
     override fun bindView(view: AbstractView) {
         super.bindView(view)
 
@@ -36,11 +40,22 @@ class HomeViewPresenter : AbstractPresenter() {
                     updateStatistics()
                 }
 
+        /**
+         * Set changes only move today's progress of the current routine, the statistics count workouts
+         * so they change only when one is deleted or today's first set creates one.
+         */
         Stream.repositoryObservable()
                 .bindToLifecycle(view)
                 .subscribe {
-                    updateTodaysProgress()
-                    updateStatistics()
+                    val isToday = it.dayKey == DateTime().toDayKey()
+
+                    if (isToday && it.routineId == RoutineStream.routine.routineId) {
+                        updateTodaysProgress()
+                    }
+
+                    if (it.type == RepositoryChangeType.RoutineDeleted || (isToday && it.repositoryRoutineId != todaysRepositoryRoutineId)) {
+                        updateStatistics()
+                    }
                 }
 
         RoutineStream.routineObservable()
@@ -62,49 +77,50 @@ class HomeViewPresenter : AbstractPresenter() {
     }
 
     fun updateTodaysProgress() {
-        val view = (getView() as HomeView)
-
-        if (Repository.repositoryRoutineForTodayExists()) {
-            view.clearCategories()
+        RepositoryReader.todaysProgress(RoutineStream.routine.routineId)
+                .bindToLifecycle(getView())
+                .subscribe {
+                    val view = (getView() as HomeView)
 
-            val repositoryRoutine = Repository.repositoryRoutineForToday
+                    todaysRepositoryRoutineId = it.repositoryRoutineId
 
-            for (category in repositoryRoutine.categories) {
-                val completionRate = RepositoryCategory.getCompletionRate(category)
+                    view.clearCategories()
 
-                view.createCategory(category.title, completionRate.label, calculateLayoutWeight(completionRate.percentage))
-            }
+                    if (it.repositoryRoutineId != null) {
+                        for (category in it.categories) {
+                            view.createCategory(category.title, category.completionRate.label, calculateLayoutWeight(category.completionRate.percentage))
+                        }
 
-            val isRoutineCompleted = (RepositoryRoutine.getCompletionRate(repositoryRoutine).percentage == 100)
+                        val isRoutineCompleted = (it.completionRate == 100)
 
-            view.setStartWorkoutButtonTitle(title = getStartWorkoutButtonText(true, isRoutineCompleted))
-            view.showTodaysWorkoutLogButton()
-        } else {
-            view.clearCategories()
+                        view.setStartWorkoutButtonTitle(title = getStartWorkoutButtonText(true, isRoutineCompleted))
+                        view.showTodaysWorkoutLogButton()
+                    } else {
+                        val routine = RoutineStream.routine
 
-            val routine = RoutineStream.routine
+                        for (category in routine.categories) {
+                            view.createCategory(category.title, "0%", calculateLayoutWeight(0))
+                        }
 
-            for (category in routine.categories) {
-                view.createCategory(category.title, "0%", calculateLayoutWeight(0))
-            }
-
-            view.setStartWorkoutButtonTitle(title = getStartWorkoutButtonText(false, false))
-            view.hideTodaysWorkoutLogButton()
-        }
+                        view.setStartWorkoutButtonTitle(title = getStartWorkoutButtonText(false, false))
+                        view.hideTodaysWorkoutLogButton()
+                    }
+                }
     }
 
     fun updateStatistics() {
-        val view = (getView() as HomeView)
+        RepositoryReader.workoutStatistics()
+                .bindToLifecycle(getView())
+                .subscribe {
+                    val view = (getView() as HomeView)
 
-        val totalWorkouts = getNumberOfWorkouts()
-        val previousWorkoutLabel = getPreviousWorkoutLabel()
-        val last7Days = getNumberOfWorkouts(days = 7)
-        val last30Days = getNumberOfWorkouts(days = 30)
+                    val previousWorkoutLabel = getPreviousWorkoutLabel(it.previousWorkoutTime)
 
-        view.setNumberOfWorkouts("$totalWorkouts ${getNumberOfWorkoutsPostfix(totalWorkouts)}")
-        view.setPreviousWorkout("$previousWorkoutLabel")
-        view.setNumberOfWorkoutsLast7Days("$last7Days ${getNumberOfWorkoutsPostfix(last7Days)}")
-        view.setNumberOfWorkoutsLast30Days("$last30Days ${getNumberOfWorkoutsPostfix(last30Days)}")
+                    view.setNumberOfWorkouts("${it.totalWorkouts} ${getNumberOfWorkoutsPostfix(it.totalWorkouts)}")
+                    view.setPreviousWorkout("$previousWorkoutLabel")
+                    view.setNumberOfWorkoutsLast7Days("${it.last7Days} ${getNumberOfWorkoutsPostfix(it.last7Days)}")
+                    view.setNumberOfWorkoutsLast30Days("${it.last30Days} ${getNumberOfWorkoutsPostfix(it.last30Days)}")
+                }
     }
 
     public fun getStartWorkoutButtonText(repositoryRoutineForTodayExists: Boolean, isRoutineCompleted: Boolean): String {
@@ -119,17 +135,9 @@ class HomeViewPresenter : AbstractPresenter() {
         return "Start Workout"
     }
 
-    private fun getPreviousWorkoutLabel(): String {
-        val startTime = DateTime().withTimeAtStartOfDay()
-
-        val results = Repository.realm.where(RepositoryRoutine::class.java)
-                .lessThan("startTime", startTime.toDate())
-                .findAll()
-
-        if (results.isNotEmpty()) {
-            results.lastOrNull()?.let {
-                return getRelativeTime(DateTime(it.startTime), System.currentTimeMillis())
-            }
+    private fun getPreviousWorkoutLabel(previousWorkoutTime: Date?): String {
+        previousWorkoutTime?.let {
+            return getRelativeTime(DateTime(it), System.currentTimeMillis())
         }
 
         return "Never"
@@ -142,26 +150,6 @@ class HomeViewPresenter : AbstractPresenter() {
                 DateUtils.MINUTE_IN_MILLIS).toString()
     }
 
-    private fun getNumberOfWorkouts(): Int {
-        return Repository.realm.where(RepositoryRoutine::class.java)
-                .count()
-                .toInt()
-    }
-
-    private fun getNumberOfWorkouts(days: Int = 7): Int {
-        val start = DateTime()
-                .withTimeAtStartOfDay()
-                .plusDays(1)
-                .minusSeconds(1) // 23:59
-
-        val end = start.minusDays(days) // 23:59 - 7 Days
-
-        return Repository.realm.where(RepositoryRoutine::class.java)
-                .between("startTime", end.toDate(), start.toDate())
-                .count()
-                .toInt()
-    }
-
     private fun getNumberOfWorkoutsPostfix(count: Int): String {
         if (count == 1) {
             return "Workout"
@@ -175,7 +163,7 @@ class HomeViewPresenter : AbstractPresenter() {
     }
 
     fun todaysWorkoutLog() {
-        val routineId = Repository.repositoryRoutineForToday.id
+        val routineId = todaysRepositoryRoutineId ?: return
 
         context().startActivity(Intent(context(), ProgressActivity::class.java)
                 .putExtra(Constants.primaryKeyRoutineId, routineId))
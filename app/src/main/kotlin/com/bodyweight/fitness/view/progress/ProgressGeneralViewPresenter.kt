@@ -10,6 +10,8 @@ import com.bodyweight.fitness.adapter.CompletionRateAdapter
 import com.bodyweight.fitness.adapter.WorkoutLengthAdapter
 import com.bodyweight.fitness.model.*
 import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.RepositoryReader
+import com.bodyweight.fitness.repository.RoutineProgressSnapshot
 import com.bodyweight.fitness.view.AbstractPresenter
 import com.bodyweight.fitness.view.AbstractView
 
@@ -31,34 +33,28 @@ import kotlin.properties.Delegates
 class ProgressGeneralViewPresenter : AbstractPresenter() {
     var repositoryRoutine: RepositoryRoutine by Delegates.notNull()
 
-    val exercises by lazy {
-        RepositoryRoutine.getVisibleAndCompletedExercises(repositoryRoutine.exercises)
-    }
-
-    val missedExercises by lazy {
-        RepositoryRoutine.getMissedExercises(repositoryRoutine.exercises)
-    }
-
-    val numberOfExercises by lazy {
-        RepositoryRoutine.getNumberOfExercises(exercises)
-    }
-
-    val numberOfCompletedExercises by lazy {
-        RepositoryRoutine.getNumberOfCompletedExercises(exercises)
-    }
-
-    val routineCompletionRate by lazy {
-        RepositoryRoutine.getCompletionRate(repositoryRoutine)
-    }
+    /**
+     * Read on the database thread, null until it arrives.
+     */
+    var progress: RoutineProgressSnapshot? = null
 
     override fun updateView() {
         super.updateView()
 
         renderTime()
-        renderTodaysProgress()
-        renderMissedExercises()
         renderWorkoutLengthHistoryGraph()
         renderCompletionRateHistoryGraph()
+
+        RepositoryReader.routineProgress(repositoryRoutine.id)
+                .bindToLifecycle(getView())
+                .subscribe {
+                    progress = it
+
+                    renderCompletionRate(it)
+                    renderTodaysProgress(it)
+                    renderMissedExercises(it)
+                    updateCompletionRateTitle()
+                }
     }
 
     fun renderTime() {
@@ -67,42 +63,46 @@ class ProgressGeneralViewPresenter : AbstractPresenter() {
         view.start_time_value.text = RepositoryRoutine.getStartTime(repositoryRoutine)
         view.end_time_value.text = RepositoryRoutine.getLastUpdatedTime(repositoryRoutine)
         view.workout_length_value.text = RepositoryRoutine.getWorkoutLength(repositoryRoutine)
+    }
+
+    fun renderCompletionRate(progress: RoutineProgressSnapshot) {
+        val view = getView() as ProgressGeneralView
 
-        if (routineCompletionRate.percentage == 100) {
+        if (progress.completionRate.percentage == 100) {
             view.end_time_label.text = "End Time"
         } else {
             view.end_time_label.text = "Last Updated"
         }
     }
 
-    fun renderTodaysProgress() {
+    fun renderTodaysProgress(progress: RoutineProgressSnapshot) {
         val view = getView() as ProgressGeneralView
 
-        view.general_completed_exercises_value.text = "$numberOfCompletedExercises out of $numberOfExercises"
-        view.general_completion_rate_value.text = "${routineCompletionRate.percentage}%"
+        view.general_completed_exercises_value.text = "${progress.numberOfCompletedExercises} out of ${progress.numberOfExercises}"
+        view.general_completion_rate_value.text = "${progress.completionRate.percentage}%"
 
         view.clearCategories()
 
-        for (category in repositoryRoutine.categories) {
-            val completionRate = RepositoryCategory.getCompletionRate(category)
-
-            view.createCategory(category.title, completionRate.label, calculateLayoutWeight(completionRate.percentage))
+        for (category in progress.categories) {
+            view.createCategory(category.title, category.completionRate.label, calculateLayoutWeight(category.completionRate.percentage))
         }
     }
 
-    fun renderMissedExercises() {
+    fun renderMissedExercises(progress: RoutineProgressSnapshot) {
         val view = getView() as ProgressGeneralView
         val parent = view.missed_exercises_layout
 
-        if (missedExercises.isNotEmpty()) {
+        parent.removeAllViews()
+
+        if (progress.missedExercises.isNotEmpty()) {
             view.missed_exercises_title.setVisible()
             view.missed_exercises_card.setVisible()
 
-            for (exercise in missedExercises) {
+            for (exercise in progress.missedExercises) {
                 val layout = parent.inflate(R.layout.activity_progress_general_exercise)
 
                 layout.exercise_title.text = exercise.title
-                layout.category_title.text = exercise.category?.title + " - " + exercise.section?.title
+                layout.category_title.text = exercise.categoryTitle + " - " + exercise.sectionTitle
 
                 parent.addView(layout)
             }
@@ -132,8 +132,8 @@ class ProgressGeneralViewPresenter : AbstractPresenter() {
             dateTimeWorkoutLength?.let {
                 view.graph_workout_length_title.text = it.dateTime.toString("dd MMMM, YYYY", Locale.ENGLISH)
 
-                if (it.repositoryRoutine != null) {
-                    view.graph_workout_length_value.text = RepositoryRoutine.getWorkoutLength(it.repositoryRoutine)
+                if (it.summary != null) {
+                    view.graph_workout_length_value.text = RepositoryDailySummary.getWorkoutLength(it.summary)
                 } else {
                     view.graph_workout_length_value.text = "Not Completed"
                 }
@@ -181,33 +181,20 @@ class ProgressGeneralViewPresenter : AbstractPresenter() {
 
     fun updateWorkoutLengthGraph(adapter: WorkoutLengthAdapter, minusDays: Int = 7) {
         val start = DateTime.now().withTimeAtStartOfDay().minusDays(minusDays)
-        val end = DateTime.now()
+        val startDayKey = start.toDayKey()
 
-        Repository.realm.where(RepositoryRoutine::class.java)
-                .between("startTime", start.toDate(), end.toDate())
+        Repository.realm.where(RepositoryDailySummary::class.java)
+                .between("dayKey", startDayKey + 1, startDayKey + minusDays)
                 .findAllAsync()
                 .sort("startTime", Sort.DESCENDING)
                 .asObservable()
                 .filter { it.isLoaded }
                 .map {
+                    val summaries = RepositoryDailySummary.byDayKey(it)
                     val dates = ArrayList<DateTimeWorkoutLength>()
 
                     for (index in 1..minusDays) {
-                        val date = start.plusDays(index)
-
-                        val repositoryRoutine = it.filter {
-                            val startTime = DateTime(it.startTime)
-
-                            date.dayOfMonth == startTime.dayOfMonth
-                                    && date.monthOfYear == startTime.monthOfYear
-                                    && date.year == startTime.year
-                        }.firstOrNull()
-
-                        if (repositoryRoutine != null) {
-                            dates.add(DateTimeWorkoutLength(date, repositoryRoutine))
-                        } else {
-                            dates.add(DateTimeWorkoutLength(date, null))
-                        }
+                        dates.add(DateTimeWorkoutLength(start.plusDays(index), summaries[startDayKey + index]))
                     }
 
                     dates
@@ -238,8 +225,8 @@ class ProgressGeneralViewPresenter : AbstractPresenter() {
             dateTimeCompletionRate?.let {
                 view.graph_completion_rate_title.text = it.dateTime.toString("dd MMMM, YYYY", Locale.ENGLISH)
 
-                if (it.repositoryRoutine != null) {
-                    val completionRate = RepositoryRoutine.getCompletionRate(it.repositoryRoutine)
+                if (it.summary != null) {
+                    val completionRate = RepositoryDailySummary.getCompletionRate(it.summary)
 
                     view.graph_completion_rate_value.text = "${completionRate.label}"
                 } else {
@@ -283,41 +270,29 @@ class ProgressGeneralViewPresenter : AbstractPresenter() {
     fun updateCompletionRateTitle() {
         val view = getView() as ProgressGeneralView
 
-        val completionRate = RepositoryRoutine.getCompletionRate(repositoryRoutine)
-
         view.graph_completion_rate_title.text = DateTime(repositoryRoutine.startTime).toString("dd MMMM, YYYY", Locale.ENGLISH)
-        view.graph_completion_rate_value.text = "${completionRate.label}"
+
+        progress?.let {
+            view.graph_completion_rate_value.text = it.completionRate.label
+        }
     }
 
     fun updateCompletionRateGraph(adapter: CompletionRateAdapter, minusDays: Int = 7) {
         val start = DateTime.now().withTimeAtStartOfDay().minusDays(minusDays)
-        val end = DateTime.now()
+        val startDayKey = start.toDayKey()
 
-        Repository.realm.where(RepositoryRoutine::class.java)
-                .between("startTime", start.toDate(), end.toDate())
+        Repository.realm.where(RepositoryDailySummary::class.java)
+                .between("dayKey", startDayKey + 1, startDayKey + minusDays)
                 .findAllAsync()
                 .sort("startTime", Sort.DESCENDING)
                 .asObservable()
                 .filter { it.isLoaded }
                 .map {
+                    val summaries = RepositoryDailySummary.byDayKey(it)
                     val dates = ArrayList<DateTimeCompletionRate>()
 
                     for (index in 1..minusDays) {
-                        val date = start.plusDays(index)
-
-                        val repositoryRoutine = it.filter {
-                            val startTime = DateTime(it.startTime)
-
-                            date.dayOfMonth == startTime.dayOfMonth
-                                    && date.monthOfYear == startTime.monthOfYear
-                                    && date.year == startTime.year
-                        }.firstOrNull()
-
-                        if (repositoryRoutine != null) {
-                            dates.add(DateTimeCompletionRate(date, repositoryRoutine))
-                        } else {
-                            dates.add(DateTimeCompletionRate(date, null))
-                        }
+                        dates.add(DateTimeCompletionRate(start.plusDays(index), summaries[startDayKey + index]))
                     }
 
                     dates
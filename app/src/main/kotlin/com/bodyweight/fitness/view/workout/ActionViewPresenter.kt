@@ -8,6 +8,7 @@ import android.net.Uri
 import android.support.design.widget.Snackbar
 import android.util.AttributeSet
 import android.view.View
+import android.widget.Toast
 
 import com.bodyweight.fitness.Constants
 import com.bodyweight.fitness.R
@@ -83,7 +84,13 @@ class ActionPresenter : AbstractPresenter() {
 
     fun todaysWorkout() {
         val view = (mView as ActionView)
-        val routineId = Repository.repositoryRoutineForToday.id
+        val routineId = Repository.findRepositoryRoutineForToday()?.id
+
+        if (routineId == null) {
+            Toast.makeText(view.context, "Nothing logged today yet", Toast.LENGTH_SHORT).show()
+
+            return
+        }
 
         view.context.startActivity(Intent(view.context, ProgressActivity::class.java)
                 .putExtra(Constants.primaryKeyRoutineId, routineId))
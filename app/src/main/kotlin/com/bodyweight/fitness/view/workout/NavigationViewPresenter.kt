@@ -9,6 +9,7 @@ import com.bodyweight.fitness.setInvisible
 import com.bodyweight.fitness.setVisible
 import com.bodyweight.fitness.stream.RoutineStream
 import com.bodyweight.fitness.stream.Stream
+import com.bodyweight.fitness.stream.TimerEngine
 import com.bodyweight.fitness.utils.Preferences
 import com.bodyweight.fitness.view.AbstractPresenter
 import com.bodyweight.fitness.view.AbstractView
@@ -125,7 +126,7 @@ open class NavigationView : AbstractView {
     }
 
     fun showTimerOrRepsLogger(isTimed: Boolean) {
-        if (!RestTimerShared.isPlaying) {
+        if (!TimerEngine.restTimer.state.isPlaying) {
             if (isTimed) {
                 rest_timer_view.setGone()
                 timer_view.setVisible()
@@ -6,19 +6,27 @@ import android.util.AttributeSet
 import com.bodyweight.fitness.Constants
 import com.bodyweight.fitness.model.*
 import com.bodyweight.fitness.repository.Repository
+import com.bodyweight.fitness.repository.RepositoryReader
 import com.bodyweight.fitness.stream.RoutineStream
 import com.bodyweight.fitness.stream.Stream
+import com.bodyweight.fitness.toDayKey
 import com.bodyweight.fitness.utils.Preferences
 import com.bodyweight.fitness.view.AbstractPresenter
 import com.bodyweight.fitness.view.AbstractView
 
 import com.trello.rxlifecycle.kotlin.bindToLifecycle
 import kotlinx.android.synthetic.main.view_timer.view.*
+import org.joda.time.DateTime
 import java.util.*
 
 class RepsLoggerPresenter : AbstractPresenter() {
     var numberOfReps: Int = 5
 
+    /**
+     * Reps logged today for the current exercise, read on the database thread whenever they change.
+     */
+    private var loggedReps: List<Int> = emptyList()
+
     override fun bindView(view: AbstractView) {
         super.bindView(view)
 
@@ -26,14 +34,17 @@ class RepsLoggerPresenter : AbstractPresenter() {
                 .bindToLifecycle(view)
                 .subscribe {
                     numberOfReps = Preferences.getNumberOfRepsForExercise(it.exerciseId, 5)
+                    loggedReps = emptyList()
 
                     updateLabels()
+                    refreshLoggedReps()
                 }
 
         Stream.repositoryObservable()
                 .bindToLifecycle(view)
+                .filter { it.exerciseId == RoutineStream.exercise.exerciseId && it.dayKey == DateTime().toDayKey() }
                 .subscribe {
-                    updateLabels()
+                    refreshLoggedReps()
                 }
     }
 
@@ -43,12 +54,27 @@ class RepsLoggerPresenter : AbstractPresenter() {
         numberOfReps = Preferences.getNumberOfRepsForExercise(RoutineStream.exercise.exerciseId, 5)
 
         updateLabels()
+        refreshLoggedReps()
+    }
+
+    /**
+     * A snapshot that arrives after the exercise changed is dropped, the newer exercise has its own read.
+     */
+    fun refreshLoggedReps() {
+        RepositoryReader.todaysSets(RoutineStream.routine.routineId, RoutineStream.exercise.exerciseId)
+                .bindToLifecycle(getView())
+                .filter { it.exerciseId == RoutineStream.exercise.exerciseId }
+                .subscribe {
+                    loggedReps = it.reps
+
+                    updateLabels()
+                }
     }
 
     fun updateLabels() {
         val repsLoggerView: RepsLoggerView = (mView as RepsLoggerView)
 
-        repsLoggerView.setSets(formatSets())
+        repsLoggerView.setSets(formatSets(loggedReps))
         repsLoggerView.setNumberOfReps(formatNumberOfReps(numberOfReps))
 
         Preferences.setNumberOfReps(RoutineStream.exercise.exerciseId, numberOfReps)
@@ -56,23 +82,22 @@ class RepsLoggerPresenter : AbstractPresenter() {
 
     fun logReps() {
         val realm = Repository.realm
-        val repositoryRoutine = Repository.repositoryRoutineForToday
+        val repositoryRoutine = Repository.getOrCreateRepositoryRoutineForToday()
 
         realm.executeTransaction {
-            repositoryRoutine.exercises.filter {
-                it.exerciseId == RoutineStream.exercise.exerciseId
-            }.firstOrNull()?.let {
+            RepositoryRoutine.findExercise(repositoryRoutine, RoutineStream.exercise.exerciseId)?.let {
                 val numberOfSets = it.sets.size
 
                 if (numberOfSets < Constants.maximumNumberOfSets) {
-                    val firstSet = it.sets.first()
+                    val firstSet = it.sets.firstOrNull()
 
-                    if (numberOfSets == 1 && firstSet.reps == 0) {
+                    if (firstSet != null && numberOfSets == 1 && firstSet.reps == 0) {
                         firstSet.reps = numberOfReps
 
+                        Stream.setRepository(RepositoryRoutine.change(repositoryRoutine, RepositoryChangeType.SetEdited, it.exerciseId))
                         Stream.setLoggedSetReps(SetReps(numberOfSets, numberOfReps))
                     } else {
-                        val repositorySet = realm.createObject(RepositorySet::class.java, "Set-" + UUID.randomUUID().toString())
+                        val repositorySet = RepositorySequence.createObject(realm, RepositorySet::class.java)
 
                         repositorySet.isTimed = false
                         repositorySet.seconds = 0
@@ -83,11 +108,13 @@ class RepsLoggerPresenter : AbstractPresenter() {
 
                         it.sets.add(repositorySet)
 
-                        Stream.setRepository()
+                        Stream.setRepository(RepositoryRoutine.change(repositoryRoutine, RepositoryChangeType.SetAdded, it.exerciseId))
                         Stream.setLoggedSetReps(SetReps(numberOfSets + 1, numberOfReps))
                     }
 
                     RepositoryRoutine.setLastUpdatedTime(repositoryRoutine, isNestedTransaction = true)
+                    RepositoryDailySummary.update(realm, repositoryRoutine)
+                    RepositorySetHistory.update(realm, it)
                 }
             }
         }
@@ -111,38 +138,24 @@ class RepsLoggerPresenter : AbstractPresenter() {
         }
     }
 
-    fun formatSets(): String {
-        val exists = Repository.repositoryRoutineForTodayExists()
-
-        if (exists) {
-            val routine = Repository.repositoryRoutineForToday
-
-            routine.exercises.filter {
-                it.exerciseId == RoutineStream.exercise.exerciseId
-            }.firstOrNull()?.let {
-                val sets = it.sets
-
-                if (sets.size == 1 && sets.first().reps == 0) {
-                    return "First Set"
-                } else if (sets.size >= Constants.maximumNumberOfSets) {
-                    return "12 Sets"
-                } else if (sets.size >= 5) {
-                    return "Set ${sets.count() + 1}"
-                }
-
-                var str = ""
-
-                for (set in sets) {
-                    str += set.reps.toString() + "-"
-                }
+    fun formatSets(reps: List<Int>): String {
+        if (reps.isEmpty() || (reps.size == 1 && reps.first() == 0)) {
+            return "First Set"
+        } else if (reps.size >= Constants.maximumNumberOfSets) {
+            return "12 Sets"
+        } else if (reps.size >= 5) {
+            return "Set ${reps.count() + 1}"
+        }
 
-                str += "X"
+        var str = ""
 
-                return str
-            }
+        for (rep in reps) {
+            str += rep.toString() + "-"
         }
 
-        return "First Set"
+        str += "X"
+
+        return str
     }
 
     fun formatNumberOfReps(numberOfReps: Int): String {
@@ -1,13 +1,14 @@
 package com.bodyweight.fitness.view.workout
 
 import android.content.Context
-import android.media.MediaPlayer
-import android.os.CountDownTimer
 import android.util.AttributeSet
 
 import com.bodyweight.fitness.*
 import com.bodyweight.fitness.stream.RoutineStream
 import com.bodyweight.fitness.stream.Stream
+import com.bodyweight.fitness.stream.TimerEngine
+import com.bodyweight.fitness.service.TimerService
+import com.bodyweight.fitness.stream.TimerState
 import com.bodyweight.fitness.utils.Preferences
 import com.bodyweight.fitness.view.AbstractPresenter
 import com.bodyweight.fitness.view.AbstractView
@@ -15,36 +16,25 @@ import com.bodyweight.fitness.view.AbstractView
 import com.trello.rxlifecycle.kotlin.bindToLifecycle
 import kotlinx.android.synthetic.main.view_timer.view.*
 
-object RestTimerShared {
-    var seconds = Preferences.restTimerDefaultSeconds
-    var currentSeconds = seconds
-    var startedLoggingSeconds = seconds
-    var loggedSeconds = 0
-
-    var isPlaying = false
-    var restored = false
-
-    var countDownTimer: CountDownTimer? = null
-}
-
 class RestTimerPresenter : AbstractPresenter() {
+    private val timer get() = TimerEngine.restTimer
+
     override fun bindView(view: AbstractView) {
         super.bindView(view)
 
-        RestTimerShared.countDownTimer?.cancel()
-
-        if (RestTimerShared.restored) {
-            RestTimerShared.restored = false
-
-            restartTimer(RestTimerShared.currentSeconds, true, RestTimerShared.isPlaying)
-
-            if (RestTimerShared.isPlaying) {
-                startTimer()
-            }
-        } else {
-            restartTimer(getSeconds(), false, false)
+        /**
+         * A rest that is running carries on when the view is recreated.
+         */
+        if (!timer.state.isPlaying) {
+            timer.reset(getSeconds())
         }
 
+        timer.observable
+                .bindToLifecycle(view)
+                .subscribe {
+                    updateTimer(it)
+                }
+
         Stream.loggedSetRepsObservable
                 .bindToLifecycle(view)
                 .subscribe {
@@ -58,10 +48,11 @@ class RestTimerPresenter : AbstractPresenter() {
                 }
     }
 
-    override fun saveView() {
-        RestTimerShared.restored = true
+    fun updateTimer(state: TimerState) {
+        val view = (mView as RestTimerView)
 
-        super.saveView()
+        view.setMinutes(state.seconds.formatMinutes())
+        view.setSeconds(state.seconds.formatSeconds())
     }
 
     fun startTimer() {
@@ -70,88 +61,39 @@ class RestTimerPresenter : AbstractPresenter() {
 
             if (section.sectionId == "section0") {
                 if (Preferences.showRestTimerAfterWarmup) {
-                    RestTimerShared.countDownTimer?.start()
+                    restartTimer()
                 }
             } else if (section.sectionId == "section1") {
                 if (Preferences.showRestTimerAfterBodylineDrills) {
-                    RestTimerShared.countDownTimer?.start()
+                    restartTimer()
                 }
             } else {
                 if (RoutineStream.routine.routineId != "routine0") {
                     if (Preferences.showRestTimerAfterFlexibilityExercises) {
-                        RestTimerShared.countDownTimer?.start()
+                        restartTimer()
                     }
                 } else {
-                    RestTimerShared.countDownTimer?.start()
+                    restartTimer()
                 }
             }
         }
     }
 
-    fun restartTimer(seconds: Int, restored: Boolean, isPlaying: Boolean) {
-        val view = (mView as RestTimerView)
-
-        RestTimerShared.countDownTimer?.cancel()
-
-        RestTimerShared.isPlaying = isPlaying
-        RestTimerShared.currentSeconds = seconds
-
-        RestTimerShared.countDownTimer = buildCountDownTimer(seconds, restored)
-
-        view.setMinutes(seconds.formatMinutes())
-        view.setSeconds(seconds.formatSeconds())
-    }
-
-    fun playSound() {
-        val view = (mView as RestTimerView)
+    fun restartTimer() {
+        timer.reset(getSeconds())
+        timer.start()
 
-        if (Preferences.playSoundWhenTimerStops()) {
-            val mediaPlayer = MediaPlayer.create(view.context, R.raw.finished)
-
-            mediaPlayer.isLooping = false
-            mediaPlayer.start()
-        }
+        TimerService.start(context())
     }
 
     fun onClickStartStopTimeButton() {
-        restartTimer(seconds = getSeconds(), restored = false, isPlaying = false)
+        timer.reset(getSeconds())
 
         Stream.setRestTimer()
     }
 
-    fun buildCountDownTimer(seconds: Int, restored: Boolean): CountDownTimer? {
-        val view = (mView as RestTimerView)
-
-        if (restored) {
-            RestTimerShared.loggedSeconds = RestTimerShared.startedLoggingSeconds
-        } else {
-            RestTimerShared.startedLoggingSeconds = seconds
-            RestTimerShared.loggedSeconds = seconds
-        }
-
-        return object : CountDownTimer((seconds * 1000).toLong(), 100) {
-            override fun onTick(millisUntilFinished: Long) {
-                val timerSeconds = millisUntilFinished.toInt() / 1000
-
-                RestTimerShared.isPlaying = true
-                RestTimerShared.currentSeconds = timerSeconds
-
-                view.setMinutes(timerSeconds.formatMinutes())
-                view.setSeconds(timerSeconds.formatSeconds())
-            }
-
-            override fun onFinish() {
-                restartTimer(getSeconds(), false, false)
-
-                playSound()
-
-                Stream.setRestTimer()
-            }
-        }
-    }
-
     fun getSeconds(): Int {
-        return Preferences.restTimerDefaultSeconds
+        return TimerEngine.restSeconds()
     }
 }
 
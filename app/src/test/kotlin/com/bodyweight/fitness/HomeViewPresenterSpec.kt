@@ -27,7 +27,7 @@ class HomeViewPresenterSpec: Spek({
             )
 
             repositoryExercise = RepositoryExercise(
-                    id = "id",
+                    id = 1,
                     exerciseId = "exerciseId",
                     title = "title",
                     description = "description",
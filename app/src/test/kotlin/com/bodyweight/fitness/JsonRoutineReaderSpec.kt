@@ -0,0 +1,96 @@
+package com.bodyweight.fitness
+
+import com.bodyweight.fitness.model.JSONRoutine
+import com.bodyweight.fitness.model.Routine
+import com.bodyweight.fitness.stream.BinaryRoutineReader
+import com.bodyweight.fitness.stream.JsonRoutineReader
+
+import com.google.gson.Gson
+
+import org.apache.commons.io.IOUtils
+import org.jetbrains.spek.api.Spek
+
+import java.io.File
+import java.io.FileInputStream
+
+import kotlin.test.assertEquals
+
+class JsonRoutineReaderSpec: Spek({
+    given("JsonRoutineReader") {
+        val routineFiles = listOf(
+                "bodyweight_fitness_recommended_routine.json",
+                "starting_stretching_flexibility_routine.json",
+                "molding_mobility_flexibility_routine.json"
+        ).map { File("src/main/res/raw", it) }
+
+        val noSavedLevels: (String) -> String? = { null }
+
+        val gsonLoader = { file: File ->
+            FileInputStream(file).use {
+                Routine(Gson().fromJson(IOUtils.toString(it, Charsets.UTF_8), JSONRoutine::class.java), noSavedLevels)
+            }
+        }
+
+        val streamingLoader = { file: File ->
+            FileInputStream(file).use {
+                JsonRoutineReader.read(it, Routine(noSavedLevels))
+            }
+        }
+
+        val binaryLoader = { file: File ->
+            FileInputStream(File("build/generated/routines/routines", file.name.replace(".json", ".routine"))).use {
+                BinaryRoutineReader.read(it, Routine(noSavedLevels))
+            }
+        }
+
+        fun flatten(routine: Routine): List<String> {
+            return listOf(routine.routineId, routine.title, routine.subtitle, routine.shortDescription, routine.url) +
+                    routine.linkedRoutine.map { "${it.type}:${it.title}" } +
+                    routine.sections.map { "${it.sectionId}:${it.sectionMode}:${it.description}:${it.category?.categoryId}" } +
+                    routine.exercises.map {
+                        "${it.exerciseId}:${it.level}:${it.description}:${it.youTubeId}:${it.videoId}:${it.defaultSet}:" +
+                                "${it.section?.sectionId}:${it.previous?.exerciseId}:${it.next?.exerciseId}"
+                    }
+        }
+
+        fun measure(iterations: Int, loader: (File) -> Routine): Long {
+            val start = System.nanoTime()
+
+            for (iteration in 0 until iterations) {
+                routineFiles.forEach { loader(it) }
+            }
+
+            return (System.nanoTime() - start) / iterations
+        }
+
+        it("builds the same routine graph as the Gson loader") {
+            for (file in routineFiles) {
+                assertEquals(flatten(gsonLoader(file)), flatten(streamingLoader(file)))
+            }
+        }
+
+        it("decodes the routines compiled at build time to the same graph") {
+            for (file in routineFiles) {
+                assertEquals(flatten(streamingLoader(file)), flatten(binaryLoader(file)))
+            }
+        }
+
+        /**
+         * Opt in with -Pbenchmark, timings are printed rather than asserted.
+         */
+        if (System.getProperty("benchmark") != null) {
+            it("measures loading the bundled routines against the Gson loader") {
+                measure(200, gsonLoader)
+                measure(200, streamingLoader)
+                measure(200, binaryLoader)
+
+                val gsonNanos = measure(500, gsonLoader)
+                val streamingNanos = measure(500, streamingLoader)
+                val binaryNanos = measure(500, binaryLoader)
+
+                println("Routine loading per iteration: gson ${gsonNanos / 1000}us, streaming ${streamingNanos / 1000}us, " +
+                        "binary ${binaryNanos / 1000}us")
+            }
+        }
+    }
+})
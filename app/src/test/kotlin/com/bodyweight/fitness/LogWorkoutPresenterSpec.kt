@@ -14,7 +14,7 @@ class LogWorkoutPresenterSpec: Spek({
     given("LogWorkoutPresenter") {
         beforeEach {
             repositoryExercise = RepositoryExercise(
-                    id = "id",
+                    id = 1,
                     exerciseId = "exerciseId",
                     title = "title",
                     description = "description",
@@ -39,7 +39,7 @@ class LogWorkoutPresenterSpec: Spek({
             given("weighted exercise") {
                 it("shows number of sets and total number of reps for 1 set") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -49,7 +49,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 1 set and 1 rep") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 1, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 1, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -59,8 +59,8 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 2 sets") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 4, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 4, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -70,8 +70,8 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 2 sets and 1 rep") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 1, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 0, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 1, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 0, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -87,7 +87,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 1 set") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -97,7 +97,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 1 set and 30 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 30, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 30, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -107,8 +107,8 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 2 sets") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 20, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 20, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -118,8 +118,8 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 2 sets and 10 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -129,7 +129,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 1 set and 60 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -139,7 +139,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 1 set and 61 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 61, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 61, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -149,10 +149,10 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of sets and total number of reps for 4 sets and 280 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 55, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 43, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 80, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 55, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 43, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 80, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getToolbarDescription(repositoryExercise)
@@ -172,7 +172,7 @@ class LogWorkoutPresenterSpec: Spek({
             given("weighted exercise") {
                 it("shows number of reps for 1 set") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -182,8 +182,8 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of reps for 2 sets") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -193,13 +193,13 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows number of reps for many sets") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 6, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 7, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = false, weight = 0.0, reps = 3, seconds = 0, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 2, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 5, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 6, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 7, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = false, weight = 0.0, reps = 3, seconds = 0, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -215,7 +215,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for 1 set and 10 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 10, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -225,7 +225,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for 1 set and 1 second") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 1, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 1, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -235,7 +235,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for 1 set and 1 minute") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -245,7 +245,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for 1 set and 2 minutes") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 120, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 120, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -255,7 +255,7 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for 1 set and 2 minutes 31 seconds") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 151, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 151, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -265,8 +265,8 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for 2 sets") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
@@ -276,14 +276,14 @@ class LogWorkoutPresenterSpec: Spek({
 
                 it("shows time for multiple sets") {
                     repositoryExercise.sets = RealmList(
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 121, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 1, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 5, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 0, exercise = repositoryExercise),
-                            RepositorySet(id = "id", isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise)
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 45, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 121, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 1, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 5, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 0, exercise = repositoryExercise),
+                            RepositorySet(id = 1, isTimed = true, weight = 0.0, reps = 0, seconds = 60, exercise = repositoryExercise)
                     )
 
                     val description = logWorkoutPresenter.getPreviousWorkoutDescription(repositoryExercise)
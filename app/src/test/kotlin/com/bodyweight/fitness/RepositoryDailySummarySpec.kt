@@ -0,0 +1,38 @@
+package com.bodyweight.fitness
+
+import com.bodyweight.fitness.model.RepositoryDailySummary
+
+import org.jetbrains.spek.api.Spek
+
+import java.util.Date
+
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class RepositoryDailySummarySpec: Spek({
+    given("RepositoryDailySummary") {
+        given("summaries by day") {
+            it("keeps the first summary of each day") {
+                val latest = RepositoryDailySummary(id = "latest", dayKey = 17000, startTime = Date(2000))
+                val earlier = RepositoryDailySummary(id = "earlier", dayKey = 17000, startTime = Date(1000))
+                val previousDay = RepositoryDailySummary(id = "previousDay", dayKey = 16999, startTime = Date(0))
+
+                val summaries = RepositoryDailySummary.byDayKey(listOf(latest, earlier, previousDay))
+
+                assertEquals(2, summaries.size)
+                assertEquals("latest", summaries[17000]?.id)
+                assertEquals("previousDay", summaries[16999]?.id)
+                assertNull(summaries[17001])
+            }
+        }
+
+        given("completion rate") {
+            it("formats the stored percentage") {
+                val completionRate = RepositoryDailySummary.getCompletionRate(RepositoryDailySummary(completionRate = 75))
+
+                assertEquals(75, completionRate.percentage)
+                assertEquals("75%", completionRate.label)
+            }
+        }
+    }
+})
@@ -0,0 +1,46 @@
+package com.bodyweight.fitness
+
+import com.bodyweight.fitness.model.JSONRoutine
+import com.bodyweight.fitness.model.Routine
+import com.bodyweight.fitness.stream.RoutineCache
+
+import org.jetbrains.spek.api.Spek
+
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class RoutineCacheSpec: Spek({
+    given("RoutineCache") {
+        val loaded = ArrayList<String>()
+
+        val cache = RoutineCache(2) {
+            loaded.add(it)
+
+            Routine(JSONRoutine().apply { routineId = it })
+        }
+
+        beforeEach {
+            loaded.clear()
+        }
+
+        it("parses a routine only once while it is cached") {
+            val routine = cache.get("routine0")
+
+            assertSame(routine, cache.get("routine0"))
+            assertEquals(listOf("routine0"), loaded)
+        }
+
+        it("evicts the least recently used routine") {
+            cache.get("routine1")
+            cache.get("routine0")
+            cache.get("routine2")
+
+            assertEquals(2, cache.size)
+            assertTrue(cache.contains("routine0"))
+            assertTrue(cache.contains("routine2"))
+            assertFalse(cache.contains("routine1"))
+        }
+    }
+})
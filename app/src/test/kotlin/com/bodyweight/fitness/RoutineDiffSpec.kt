@@ -0,0 +1,114 @@
+package com.bodyweight.fitness
+
+import com.bodyweight.fitness.model.*
+import com.bodyweight.fitness.repository.RoutineDiff
+import com.bodyweight.fitness.repository.RoutineEdit
+import com.bodyweight.fitness.repository.RoutineEditType
+import com.bodyweight.fitness.repository.RoutineNode
+
+import io.realm.Realm
+
+import org.jetbrains.spek.api.Spek
+import org.mockito.Mockito.mock
+
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class RoutineDiffSpec: Spek({
+    given("RoutineDiff") {
+        fun routine(vararg exercises: Pair<String, String>): Routine {
+            val routine = Routine { null }
+
+            routine.insertCategory(Category("category0", "Warmup"))
+
+            for ((sectionId, exerciseId) in exercises) {
+                if (routine.getSection(sectionId) == null) {
+                    routine.insertSection(Section(sectionId, sectionId, "", SectionMode.All))
+                }
+
+                routine.insertExercise(Exercise(exerciseId, "", exerciseId, "", "", "", "timed"))
+            }
+
+            return routine
+        }
+
+        fun repositoryRoutine(routine: Routine): RepositoryRoutine {
+            val repositoryRoutine = RepositoryRoutine(id = "id")
+            val repositoryCategory = RepositoryCategory(categoryId = "category0", title = "Warmup", routine = repositoryRoutine)
+
+            repositoryRoutine.categories.add(repositoryCategory)
+
+            for (section in routine.sections) {
+                val repositorySection = RepositorySection(sectionId = section.sectionId, title = section.title,
+                        mode = section.sectionMode.toString(), routine = repositoryRoutine, category = repositoryCategory)
+
+                repositoryRoutine.sections.add(repositorySection)
+                repositoryCategory.sections.add(repositorySection)
+
+                for (exercise in section.exercises) {
+                    val repositoryExercise = RepositoryExercise(exerciseId = exercise.exerciseId, title = exercise.title,
+                            defaultSet = exercise.defaultSet, routine = repositoryRoutine, category = repositoryCategory,
+                            section = repositorySection)
+
+                    repositoryRoutine.exercises.add(repositoryExercise)
+                    repositoryCategory.exercises.add(repositoryExercise)
+                    repositorySection.exercises.add(repositoryExercise)
+                }
+            }
+
+            return repositoryRoutine
+        }
+
+        it("finds nothing to change for the same routine") {
+            val routine = routine("section0" to "a", "section0" to "b")
+
+            assertTrue(RoutineDiff.diff(routine, repositoryRoutine(routine)).isEmpty())
+        }
+
+        it("adds new exercises and sections and removes exercises without sets") {
+            val stored = repositoryRoutine(routine("section0" to "a", "section0" to "b"))
+            val routine = routine("section0" to "a", "section1" to "c")
+
+            assertEquals(listOf(
+                    RoutineEdit(RoutineEditType.Add, RoutineNode.Section, "section1"),
+                    RoutineEdit(RoutineEditType.Add, RoutineNode.Exercise, "c"),
+                    RoutineEdit(RoutineEditType.Remove, RoutineNode.Exercise, "b")
+            ), RoutineDiff.diff(routine, stored))
+        }
+
+        it("keeps exercises with logged sets") {
+            val stored = repositoryRoutine(routine("section0" to "a", "section0" to "b"))
+            stored.exercises[1].sets.add(RepositorySet(id = 1, reps = 5))
+
+            assertTrue(RoutineDiff.diff(routine("section0" to "a"), stored).isEmpty())
+        }
+
+        it("removes a section left empty by an exercise moving out of it") {
+            val stored = repositoryRoutine(routine("section0" to "a", "section1" to "b"))
+            val routine = routine("section1" to "a", "section1" to "b")
+
+            RoutineDiff.apply(mock(Realm::class.java), routine, stored, RoutineDiff.diff(routine, stored))
+
+            assertEquals(listOf("section1"), stored.sections.map { it.sectionId })
+            assertEquals(listOf("section1"), stored.categories.first().sections.map { it.sectionId })
+            assertEquals(listOf("a", "b"), stored.sections.first().exercises.map { it.exerciseId })
+            assertEquals("section1", stored.exercises.first().section?.sectionId)
+        }
+
+        it("removes a section dropped from the routine together with its exercises") {
+            val stored = repositoryRoutine(routine("section0" to "a", "section1" to "b"))
+            val routine = routine("section1" to "b")
+
+            RoutineDiff.apply(mock(Realm::class.java), routine, stored, RoutineDiff.diff(routine, stored))
+
+            assertEquals(listOf("b"), stored.exercises.map { it.exerciseId })
+            assertEquals(listOf("section1"), stored.sections.map { it.sectionId })
+            assertEquals(listOf("b"), stored.categories.first().exercises.map { it.exerciseId })
+        }
+
+        it("moves only the exercises out of order") {
+            assertEquals(setOf("d"), RoutineDiff.movedIds(listOf("d", "a", "b", "c"), listOf("a", "b", "c", "d")))
+            assertEquals(setOf("c"), RoutineDiff.movedIds(listOf("a", "c", "b"), listOf("a", "b", "c")))
+        }
+    }
+})